@@ -0,0 +1,48 @@
+package com.trator.chatranslator;
+
+import org.openjdk.jcstress.annotations.Actor;
+import org.openjdk.jcstress.annotations.Arbiter;
+import org.openjdk.jcstress.annotations.Description;
+import org.openjdk.jcstress.annotations.Expect;
+import org.openjdk.jcstress.annotations.JCStressTest;
+import org.openjdk.jcstress.annotations.Outcome;
+import org.openjdk.jcstress.annotations.State;
+import org.openjdk.jcstress.infra.results.ZJ_Result;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 队列为空或命中缓存时归还窗口，不能覆盖其他线程在此期间占到的新窗口
+ */
+@JCStressTest
+@Description("归还没有用上的调用窗口时另一个线程占用了新窗口")
+@Outcome(id = "true, 20000", expect = Expect.ACCEPTABLE, desc = "另一个线程占到新窗口并保留")
+@Outcome(id = "false, 1000", expect = Expect.ACCEPTABLE, desc = "另一个线程没有占到，窗口恢复原状")
+@Outcome(id = "true, 1000", expect = Expect.FORBIDDEN, desc = "归还时覆盖了另一个线程的窗口，下一次调用会提前发出")
+@Outcome(expect = Expect.FORBIDDEN, desc = "其他结果")
+@State
+public class ApiWindowReleaseStressTest {
+    private static final long PREVIOUS = 1_000;
+    private static final long FIRST = 10_000;
+    private static final long SECOND = 20_000;
+
+    private final AtomicLong window = new AtomicLong(PREVIOUS);
+
+    @Actor
+    public void emptyQueue() {
+        long lastCall = window.get();
+        if (ChatMessageListener.tryAcquireApiWindow(window, lastCall, FIRST)) {
+            ChatMessageListener.releaseApiWindow(window, FIRST, lastCall);
+        }
+    }
+
+    @Actor
+    public void dispatcher(ZJ_Result r) {
+        r.r1 = ChatMessageListener.tryAcquireApiWindow(window, window.get(), SECOND);
+    }
+
+    @Arbiter
+    public void arbiter(ZJ_Result r) {
+        r.r2 = window.get();
+    }
+}
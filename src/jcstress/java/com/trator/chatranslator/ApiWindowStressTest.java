@@ -0,0 +1,36 @@
+package com.trator.chatranslator;
+
+import org.openjdk.jcstress.annotations.Actor;
+import org.openjdk.jcstress.annotations.Description;
+import org.openjdk.jcstress.annotations.Expect;
+import org.openjdk.jcstress.annotations.JCStressTest;
+import org.openjdk.jcstress.annotations.Outcome;
+import org.openjdk.jcstress.annotations.State;
+import org.openjdk.jcstress.infra.results.ZZ_Result;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 队列处理器和空闲任务同时检查调用间隔时，同一个窗口只能发起一次调用
+ */
+@JCStressTest
+@Description("两个线程同时占用同一个API调用窗口")
+@Outcome(id = {"true, false", "false, true"}, expect = Expect.ACCEPTABLE, desc = "只有一个线程占到窗口")
+@Outcome(id = "true, true", expect = Expect.FORBIDDEN, desc = "同一个窗口发起了两次调用")
+@Outcome(id = "false, false", expect = Expect.FORBIDDEN, desc = "窗口已经可用但没有线程占到")
+@State
+public class ApiWindowStressTest {
+    private static final long NOW = 10_000;
+
+    private final AtomicLong window = new AtomicLong(1_000);
+
+    @Actor
+    public void dispatcher(ZZ_Result r) {
+        r.r1 = ChatMessageListener.tryAcquireApiWindow(window, window.get(), NOW);
+    }
+
+    @Actor
+    public void idleWork(ZZ_Result r) {
+        r.r2 = ChatMessageListener.tryAcquireApiWindow(window, window.get(), NOW);
+    }
+}
@@ -0,0 +1,51 @@
+package com.trator.chatranslator;
+
+import org.openjdk.jcstress.annotations.Actor;
+import org.openjdk.jcstress.annotations.Arbiter;
+import org.openjdk.jcstress.annotations.Description;
+import org.openjdk.jcstress.annotations.Expect;
+import org.openjdk.jcstress.annotations.JCStressTest;
+import org.openjdk.jcstress.annotations.Outcome;
+import org.openjdk.jcstress.annotations.State;
+import org.openjdk.jcstress.infra.results.I_Result;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 客户端线程和恢复任务同时收到同一条消息时，与监听器一样用 add 的返回值登记，只排队一次
+ */
+@JCStressTest
+@Description("两个线程同时登记并排队同一条消息")
+@Outcome(id = "1", expect = Expect.ACCEPTABLE, desc = "只排队一次")
+@Outcome(id = "2", expect = Expect.FORBIDDEN, desc = "同一条消息排队两次，API调用了两次")
+@Outcome(expect = Expect.FORBIDDEN, desc = "其他结果")
+@State
+public class DedupQueueStressTest {
+    private static final String CONTENT = "hello";
+
+    private final Set<String> pending = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private final FairTranslationQueue queue = new FairTranslationQueue(request -> {});
+
+    @Actor
+    public void clientThread() {
+        enqueue("Steve");
+    }
+
+    @Actor
+    public void resumeTask() {
+        enqueue("Steve");
+    }
+
+    @Arbiter
+    public void arbiter(I_Result r) {
+        r.r1 = queue.size();
+    }
+
+    private void enqueue(String sender) {
+        if (pending.add(CONTENT)) {
+            queue.offer(new FairTranslationQueue.Request(CONTENT, sender, true, 0), 64, 0);
+        }
+    }
+}
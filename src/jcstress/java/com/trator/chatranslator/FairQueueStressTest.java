@@ -0,0 +1,42 @@
+package com.trator.chatranslator;
+
+import org.openjdk.jcstress.annotations.Actor;
+import org.openjdk.jcstress.annotations.Arbiter;
+import org.openjdk.jcstress.annotations.Description;
+import org.openjdk.jcstress.annotations.Expect;
+import org.openjdk.jcstress.annotations.JCStressTest;
+import org.openjdk.jcstress.annotations.Outcome;
+import org.openjdk.jcstress.annotations.State;
+import org.openjdk.jcstress.infra.results.II_Result;
+
+/**
+ * 两个发送者的消息入队时队列处理器同时取出，消息不会丢失也不会被取出两次
+ */
+@JCStressTest
+@Description("两个线程入队时另一个线程取出")
+@Outcome(id = {"0, 2", "1, 1"}, expect = Expect.ACCEPTABLE, desc = "取出的和剩下的加起来正好两条")
+@Outcome(expect = Expect.FORBIDDEN, desc = "消息丢失或重复")
+@State
+public class FairQueueStressTest {
+    private final FairTranslationQueue queue = new FairTranslationQueue(request -> {});
+
+    @Actor
+    public void steve() {
+        queue.offer(new FairTranslationQueue.Request("hello", "Steve", true, 0), 64, 0);
+    }
+
+    @Actor
+    public void alex() {
+        queue.offer(new FairTranslationQueue.Request("hi", "Alex", true, 0), 64, 0);
+    }
+
+    @Actor
+    public void processor(II_Result r) {
+        r.r1 = queue.poll(0, 0, 1) != null ? 1 : 0;
+    }
+
+    @Arbiter
+    public void arbiter(II_Result r) {
+        r.r2 = queue.size();
+    }
+}
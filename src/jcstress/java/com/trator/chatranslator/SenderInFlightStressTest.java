@@ -0,0 +1,37 @@
+package com.trator.chatranslator;
+
+import org.openjdk.jcstress.annotations.Actor;
+import org.openjdk.jcstress.annotations.Description;
+import org.openjdk.jcstress.annotations.Expect;
+import org.openjdk.jcstress.annotations.JCStressTest;
+import org.openjdk.jcstress.annotations.Outcome;
+import org.openjdk.jcstress.annotations.State;
+import org.openjdk.jcstress.infra.results.ZZ_Result;
+
+/**
+ * 无间隔限制的接口并发派发时，同一个发送者同时进行中的请求不超过上限
+ */
+@JCStressTest
+@Description("两个线程同时取出同一个发送者的消息，每个发送者最多一条进行中")
+@Outcome(id = {"true, false", "false, true"}, expect = Expect.ACCEPTABLE, desc = "只取出一条")
+@Outcome(id = "true, true", expect = Expect.FORBIDDEN, desc = "同一个发送者同时进行了两条，超过上限")
+@Outcome(id = "false, false", expect = Expect.FORBIDDEN, desc = "有可以取出的消息但没有取出")
+@State
+public class SenderInFlightStressTest {
+    private final FairTranslationQueue queue = new FairTranslationQueue(request -> {});
+
+    public SenderInFlightStressTest() {
+        queue.offer(new FairTranslationQueue.Request("hello", "Steve", true, 0), 64, 0);
+        queue.offer(new FairTranslationQueue.Request("anyone here?", "Steve", true, 0), 64, 0);
+    }
+
+    @Actor
+    public void dispatcher1(ZZ_Result r) {
+        r.r1 = queue.poll(0, 0, 1) != null;
+    }
+
+    @Actor
+    public void dispatcher2(ZZ_Result r) {
+        r.r2 = queue.poll(0, 0, 1) != null;
+    }
+}
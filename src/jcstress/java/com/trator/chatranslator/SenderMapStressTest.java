@@ -0,0 +1,40 @@
+package com.trator.chatranslator;
+
+import org.openjdk.jcstress.annotations.Actor;
+import org.openjdk.jcstress.annotations.Description;
+import org.openjdk.jcstress.annotations.Expect;
+import org.openjdk.jcstress.annotations.JCStressTest;
+import org.openjdk.jcstress.annotations.Outcome;
+import org.openjdk.jcstress.annotations.State;
+import org.openjdk.jcstress.infra.results.LL_Result;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 同一条消息的两个翻译回调同时取出发送者时，只有一个能拿到
+ */
+@JCStressTest
+@Description("两个回调同时取出同一条消息的发送者")
+@Outcome(id = {"Steve, 未知玩家", "未知玩家, Steve"}, expect = Expect.ACCEPTABLE, desc = "发送者只被取出一次")
+@Outcome(id = "Steve, Steve", expect = Expect.FORBIDDEN, desc = "发送者被取出两次，同一条译文显示两次")
+@Outcome(expect = Expect.FORBIDDEN, desc = "其他结果")
+@State
+public class SenderMapStressTest {
+    private static final String CONTENT = "hello";
+
+    private final ConcurrentHashMap<String, String> senders = new ConcurrentHashMap<>();
+
+    public SenderMapStressTest() {
+        senders.put(CONTENT, "Steve");
+    }
+
+    @Actor
+    public void immediate(LL_Result r) {
+        r.r1 = ChatMessageListener.takeSender(senders, CONTENT);
+    }
+
+    @Actor
+    public void delayed(LL_Result r) {
+        r.r2 = ChatMessageListener.takeSender(senders, CONTENT);
+    }
+}
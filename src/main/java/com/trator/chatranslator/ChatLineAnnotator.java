@@ -0,0 +1,206 @@
+package com.trator.chatranslator;
+
+import com.trator.chatranslator.config.ModConfig;
+import com.trator.chatranslator.mixin.ChatHudAccessor;
+import com.trator.chatranslator.network.CancellationToken;
+import com.trator.chatranslator.network.TranslationService;
+import com.trator.chatranslator.profile.SenderLanguageProfiles;
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.client.gui.hud.ChatHud;
+import net.minecraft.client.gui.hud.ChatHudLine;
+import net.minecraft.client.gui.hud.MessageIndicator;
+import net.minecraft.client.util.ChatMessages;
+import net.minecraft.text.HoverEvent;
+import net.minecraft.text.MutableText;
+import net.minecraft.text.OrderedText;
+import net.minecraft.text.Text;
+import net.minecraft.util.Formatting;
+import net.minecraft.util.math.MathHelper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * 把译文附加到聊天框中原来的消息行上
+ * 收到新消息的译文时替换对应的那一行（行末附加或悬停显示），聊天框的消息数不变；
+ * 也可以收集最近的玩家消息，去重后通过一次批量请求翻译已有的聊天记录。
+ * 替换时只重新排版被替换的那一条消息，不重排整个聊天框
+ */
+public class ChatLineAnnotator {
+    // 收到译文时向前查找原消息的行数，更早的消息改为另起一条显示
+    private static final int SEARCH_LINES = 20;
+    // 聊天框最多保留的显示行数，与原版一致
+    private static final int MAX_VISIBLE_LINES = 100;
+
+    // 已经附加过译文的消息内容，同一句话出现多次时依次附加到不同的行上；只在客户端线程上访问
+    private static final Set<Text> ANNOTATED = Collections.newSetFromMap(new WeakHashMap<>());
+
+    /**
+     * 把新消息的译文附加到原消息行上，找不到原消息行（已被刷走）时执行 fallback，可在任意线程调用
+     */
+    public static void annotateLive(String content, String translated, CancellationToken token, Runnable fallback) {
+        MinecraftClient client = MinecraftClient.getInstance();
+        // 总是排到下一次执行，收到消息时同步得到的译文（缓存、固定公告）要等原消息写入聊天框后才能找到
+        client.send(() -> {
+            if (token.isCancelled()) {
+                return;
+            }
+            ChatHud chatHud = client.inGameHud.getChatHud();
+            List<ChatHudLine> messages = ((ChatHudAccessor) chatHud).chatranslator$getMessages();
+            for (int i = 0; i < Math.min(SEARCH_LINES, messages.size()); i++) {
+                ChatHudLine line = messages.get(i);
+                if (!ANNOTATED.contains(line.content()) && matches(line.content().getString(), content)) {
+                    replaceLine(chatHud, i, annotateLine(line, translated));
+                    return;
+                }
+            }
+            fallback.run();
+        });
+    }
+
+    /**
+     * 翻译聊天框中最近的消息，必须在客户端线程上调用
+     * @param count 最多检查的消息行数
+     * @return 发送翻译的消息条数（去重后）
+     */
+    public static int translateBacklog(int count) {
+        MinecraftClient client = MinecraftClient.getInstance();
+        ChatHud chatHud = client.inGameHud.getChatHud();
+        List<ChatHudLine> messages = ((ChatHudAccessor) chatHud).chatranslator$getMessages();
+        String currentPlayer = client.player != null ? client.player.getName().getString() : null;
+        String targetLanguage = ModConfig.getTargetLanguage();
+
+        // 原文 -> 包含该原文的消息行，同一句话只翻译一次
+        Map<String, List<ChatHudLine>> linesByContent = new LinkedHashMap<>();
+        for (int i = 0; i < Math.min(count, messages.size()); i++) {
+            ChatHudLine line = messages.get(i);
+            if (ANNOTATED.contains(line.content())) {
+                continue;
+            }
+            MessageClassifier.Result result = MessageClassifier.classify(line.content().getString(), currentPlayer);
+            if (result.outcome != MessageClassifier.Outcome.TRANSLATE
+                    || SenderLanguageProfiles.usesLanguage(result.playerName, targetLanguage)) {
+                continue;
+            }
+            linesByContent.computeIfAbsent(result.content, k -> new ArrayList<>()).add(line);
+        }
+        if (linesByContent.isEmpty()) {
+            return 0;
+        }
+
+        List<String> contents = new ArrayList<>(linesByContent.keySet());
+        TranslationService.translateBatchAsync(contents).whenComplete((results, error) -> {
+            if (error != null) {
+                ChatTranslatorMod.LOGGER.error("翻译聊天记录时发生错误", error);
+                return;
+            }
+
+            Map<ChatHudLine, String> translations = new IdentityHashMap<>();
+            for (int i = 0; i < contents.size(); i++) {
+                String translated = results.get(i);
+                if (translated == null || TranslationService.isErrorResult(translated) || translated.equals(contents.get(i))) {
+                    continue;
+                }
+                for (ChatHudLine line : linesByContent.get(contents.get(i))) {
+                    translations.put(line, translated);
+                }
+            }
+            if (!translations.isEmpty()) {
+                client.execute(() -> annotate(chatHud, translations));
+            }
+        });
+        return contents.size();
+    }
+
+    // 在客户端线程上替换消息行，期间可能有新消息插入，所以按对象查找而不是按下标
+    private static void annotate(ChatHud chatHud, Map<ChatHudLine, String> translations) {
+        List<ChatHudLine> messages = ((ChatHudAccessor) chatHud).chatranslator$getMessages();
+        for (int i = 0; i < messages.size(); i++) {
+            ChatHudLine line = messages.get(i);
+            String translated = translations.get(line);
+            if (translated != null) {
+                replaceLine(chatHud, i, annotateLine(line, translated));
+            }
+        }
+    }
+
+    // 按显示方式生成附加了译文的消息行，hover 时文字不变，只在悬停提示中显示译文
+    private static ChatHudLine annotateLine(ChatHudLine line, String translated) {
+        MutableText annotated;
+        if (ModConfig.DISPLAY_HOVER.equals(ModConfig.getDisplayMode())) {
+            // 子文本（例如玩家名）自己的悬停事件保持不变
+            Text hover = Text.literal("[译] ").formatted(Formatting.GOLD)
+                    .append(Text.literal(translated).formatted(Formatting.WHITE));
+            annotated = line.content().copy().styled(style -> style
+                    .withHoverEvent(new HoverEvent(HoverEvent.Action.SHOW_TEXT, hover)));
+        } else {
+            annotated = line.content().copy()
+                    .append(Text.literal(" [译] ").formatted(Formatting.GOLD))
+                    .append(Text.literal(translated).formatted(Formatting.GRAY));
+        }
+        ANNOTATED.add(annotated);
+        return new ChatHudLine(line.creationTick(), annotated, line.signature(), line.indicator());
+    }
+
+    // 消息行是否就是这条原文：整行相同（非玩家消息），或者去掉发送者前缀后相同
+    private static boolean matches(String lineText, String content) {
+        String text = lineText.trim();
+        if (text.equals(content)) {
+            return true;
+        }
+        if (!text.endsWith(content)) {
+            return false;
+        }
+        return content.equals(MessageClassifier.classify(text, null).content);
+    }
+
+    /**
+     * 替换第 index 条消息，并只重新排版这一条消息对应的显示行
+     * 每条消息在显示行中占连续的一段，段内最新的一行（下标最小）endOfEntry 为 true
+     */
+    private static void replaceLine(ChatHud chatHud, int index, ChatHudLine line) {
+        ChatHudAccessor accessor = (ChatHudAccessor) chatHud;
+        accessor.chatranslator$getMessages().set(index, line);
+
+        List<ChatHudLine.Visible> visible = accessor.chatranslator$getVisibleMessages();
+        int start = -1;
+        int entry = -1;
+        for (int i = 0; i < visible.size(); i++) {
+            if (visible.get(i).endOfEntry() && ++entry == index) {
+                start = i;
+                break;
+            }
+        }
+        if (start < 0) {
+            // 已经超出显示行的范围，不需要排版
+            return;
+        }
+        int end = start + 1;
+        while (end < visible.size() && !visible.get(end).endOfEntry()) {
+            end++;
+        }
+
+        // 与原版计算换行宽度的方式一致
+        MinecraftClient client = MinecraftClient.getInstance();
+        int width = MathHelper.floor(chatHud.getWidth() / chatHud.getChatScale());
+        MessageIndicator.Icon icon = line.getIcon();
+        if (icon != null) {
+            width -= icon.width + 4 + 2;
+        }
+        List<OrderedText> wrapped = ChatMessages.breakRenderedChatMessageLines(line.content(), width, client.textRenderer);
+
+        visible.subList(start, end).clear();
+        for (int j = 0; j < wrapped.size(); j++) {
+            visible.add(start, new ChatHudLine.Visible(line.creationTick(), wrapped.get(j), line.indicator(), j == wrapped.size() - 1));
+        }
+        while (visible.size() > MAX_VISIBLE_LINES) {
+            visible.remove(visible.size() - 1);
+        }
+    }
+}
@@ -1,110 +1,73 @@
 package com.trator.chatranslator;
 
+import com.trator.chatranslator.cache.BroadcastStore;
+import com.trator.chatranslator.cache.TranslationCache;
+import com.trator.chatranslator.cache.TranslationJournal;
+import com.trator.chatranslator.cache.WorldTextCache;
 import com.trator.chatranslator.config.ModConfig;
+import com.trator.chatranslator.diagnostics.DiagnosticLog;
+import com.trator.chatranslator.diagnostics.MessageClassifiedEvent;
+import com.trator.chatranslator.network.CancellationToken;
 import com.trator.chatranslator.network.TranslationService;
+import com.trator.chatranslator.profile.LanguageDetector;
+import com.trator.chatranslator.profile.SenderLanguageProfiles;
 import net.fabricmc.fabric.api.client.message.v1.ClientReceiveMessageEvents;
+import net.fabricmc.fabric.api.client.networking.v1.ClientPlayConnectionEvents;
 import net.minecraft.client.MinecraftClient;
 import net.minecraft.text.MutableText;
 import net.minecraft.text.Style;
 import net.minecraft.text.Text;
 import net.minecraft.util.Formatting;
 
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
-import java.util.Queue;
+import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.function.Consumer;
+
+import static com.trator.chatranslator.MessageClassifier.isCommand;
 
 public class ChatMessageListener {
-    // 匹配系统消息、已翻译消息等不需要处理的内容
-    private static final Pattern SYSTEM_MESSAGE_PATTERN = Pattern.compile("^\\[系统\\]|^\\[译|^\\[原文]|\\[(.+)加入了游戏\\]|\\[(.+)离开了游戏\\]");
-    
-    // 玩家聊天消息模式 - 包括普通聊天(<Player> message)和安全聊天格式
-    private static final Pattern PLAYER_MESSAGE_PATTERN = Pattern.compile("<([^>]+)>\\s+(.+)");
-    
-    // 命令消息格式 - 用于过滤掉命令
-    private static final Pattern COMMAND_PATTERN = Pattern.compile("^/.*");
-    
-    // 备用玩家消息格式，用于匹配可能的不同格式
-    private static final Pattern ALT_PLAYER_MESSAGE_PATTERN = Pattern.compile("\\[CHAT\\]\\s+<([^>]+)>\\s+(.+)");
-    
-    // 检测中文字符的正则表达式
-    private static final Pattern CHINESE_PATTERN = Pattern.compile("[\\u4e00-\\u9fa5]");
-    
-    // 常见中文网络缩写
-    private static final Set<String> CHINESE_ABBREVIATIONS = new HashSet<>(Arrays.asList(
-        "gg", "nb", "xswl", "nmsl", "sb", "lz", "fvv", "fw", "233"
-    ));
-    
-    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor();
+    // 调度线程在第一次进入世界时才创建
+    private static ScheduledExecutorService scheduler;
+    private static ScheduledFuture<?> queueProcessor;
     
     // API调用频率限制 - 每次调用之间的最小间隔（毫秒）
     private static final long API_RATE_LIMIT_MS = 1300; // 1.3秒
     
+    // 遇到频率限制时最多尝试的次数，以及第一次重试前的等待时间（毫秒），之后每次加倍
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long RETRY_BACKOFF_MS = 2000;
+    
     // 上次API调用的时间
     private static final AtomicLong lastApiCallTime = new AtomicLong(0);
     
-    // 待翻译消息队列
-    private static final Queue<TranslationRequest> translationQueue = new ConcurrentLinkedQueue<>();
+    // 正在进行中的翻译数量
+    private static final AtomicInteger inFlightTranslations = new AtomicInteger(0);
     
     // 使用线程安全的Set跟踪正在翻译的内容，防止重复翻译
     private static final Set<String> pendingTranslations = Collections.newSetFromMap(new ConcurrentHashMap<>());
     
+    // 待翻译消息队列，按发送者轮询并在过载时丢弃消息
+    private static final FairTranslationQueue translationQueue = new FairTranslationQueue(ChatMessageListener::onRequestShed);
+    
     // 存储消息与发送者的关系
     private static final ConcurrentHashMap<String, String> messageSenders = new ConcurrentHashMap<>();
     
-    // 翻译请求类
-    private static class TranslationRequest {
-        final String content;
-        final boolean immediate;
-        
-        TranslationRequest(String content, boolean immediate) {
-            this.content = content;
-            this.immediate = immediate;
-        }
-    }
+    // 离线回放工具在这里记录译文送达的时间，游戏中为空
+    static volatile Consumer<String> deliveryObserver;
     
-    // 检查消息是否包含中文字符
-    private static boolean containsChineseCharacters(String text) {
-        if (text == null || text.isEmpty()) {
-            return false;
-        }
-        return CHINESE_PATTERN.matcher(text).find();
-    }
-    
-    // 检查消息是否是中文网络缩写
-    private static boolean isChineseAbbreviation(String text) {
-        if (text == null || text.isEmpty()) {
-            return false;
-        }
-        
-        // 将消息转换为小写并清除空格进行比较
-        String normalized = text.toLowerCase().trim();
-        
-        // 检查完整消息是否匹配
-        if (CHINESE_ABBREVIATIONS.contains(normalized)) {
-            return true;
-        }
-        
-        // 检查消息是否只包含这些缩写
-        for (String abbr : CHINESE_ABBREVIATIONS) {
-            // 如果消息只包含缩写加一些标点或空格
-            if (normalized.matches("\\s*" + Pattern.quote(abbr) + "\\s*[!?,.。！？，]*\\s*")) {
-                return true;
-            }
-        }
-        
-        return false;
-    }
+    // 当前的取消标记，关闭翻译、修改目标语言、重置配置或清空聊天框时换成新的
+    private static volatile CancellationToken cancellationToken = new CancellationToken();
     
     // 检查消息是否应该被跳过翻译（包含中文或是中文缩写）
     private static boolean shouldSkipTranslation(String content) {
@@ -113,16 +76,16 @@ public class ChatMessageListener {
         }
         
         // 检查是否包含中文
-        boolean containsChinese = containsChineseCharacters(content);
+        boolean containsChinese = MessageClassifier.containsChineseCharacters(content);
         if (containsChinese) {
-            ChatTranslatorMod.LOGGER.info("跳过包含中文的消息: '{}'", content);
+            DiagnosticLog.trace("跳过包含中文的消息: '{}'", content);
             return true;
         }
         
         // 检查是否是常见中文网络缩写
-        boolean isAbbreviation = isChineseAbbreviation(content);
+        boolean isAbbreviation = MessageClassifier.isChineseAbbreviation(content);
         if (isAbbreviation) {
-            ChatTranslatorMod.LOGGER.info("跳过中文网络缩写: '{}'", content);
+            DiagnosticLog.trace("跳过中文网络缩写: '{}'", content);
             return true;
         }
         
@@ -130,154 +93,240 @@ public class ChatMessageListener {
     }
     
     public static void register() {
-        //直接捕获聊天
+        // 玩家签名聊天，优先翻译
         ClientReceiveMessageEvents.ALLOW_CHAT.register((message, signedMessage, sender, params, receptionTimestamp) -> {
+            MessageClassifiedEvent event = new MessageClassifiedEvent();
+            event.begin();
+            String outcome = "ignored";
+            int messageLength = 0;
             try {
                 String textContent = message.getString();
-                ChatTranslatorMod.LOGGER.info("[ALLOW_CHAT] 捕获聊天消息: '{}'", textContent);
-                
-                // 只处理包含玩家名称格式的消息，排除命令
-                if (ModConfig.isTranslationEnabled() && !isOwnMessage(textContent) && !isCommand(textContent)) {
-                    // 直接从聊天消息中提取内容并翻译
-                    Matcher playerMatcher = PLAYER_MESSAGE_PATTERN.matcher(textContent);
-                    if (playerMatcher.find() && playerMatcher.groupCount() >= 2) {
-                        String playerName = playerMatcher.group(1);
-                        String content = playerMatcher.group(2).trim();
-                        
-                        // 检查是否是当前玩家发送的消息
-                        if (isCurrentPlayer(playerName)) {
-                            ChatTranslatorMod.LOGGER.info("[ALLOW_CHAT] 跳过当前玩家消息: '{}'", content);
-                            return true;
-                        }
-                        
-                        // 检查是否应该跳过翻译（中文或中文缩写）
-                        if (shouldSkipTranslation(content)) {
-                            ChatTranslatorMod.LOGGER.info("[ALLOW_CHAT] 跳过中文内容或中文缩写: '{}'", content);
-                            return true;
-                        }
-                        
-                        // 再次检查内容是否是命令
-                        if (!isCommand(content)) {
-                            ChatTranslatorMod.LOGGER.info("[ALLOW_CHAT] 提取玩家消息: '{}' 说: '{}'", playerName, content);
-                            
-                            // 记录消息发送者
-                            messageSenders.put(content, playerName);
-                            
-                            // 添加到翻译队列，优先级高
-                            if (!pendingTranslations.contains(content)) {
-                                pendingTranslations.add(content);
-                                ChatTranslatorMod.LOGGER.info("[ALLOW_CHAT] 将消息添加到翻译队列: '{}'", content);
-                                enqueueTranslation(content, true);
-                            }
-                        } else {
-                            ChatTranslatorMod.LOGGER.info("[ALLOW_CHAT] 跳过命令消息: '{}'", content);
-                        }
-                    }
-                }
+                messageLength = textContent.length();
+                DiagnosticLog.trace("[ALLOW_CHAT] 捕获聊天消息: '{}'", textContent);
+                outcome = handleMessage(textContent, getCurrentPlayerName(), sender != null ? sender.getId() : null, true);
             } catch (Exception e) {
                 ChatTranslatorMod.LOGGER.error("处理ALLOW_CHAT消息时发生错误", e);
+                outcome = "error";
+            } finally {
+                commitClassification(event, "ALLOW_CHAT", outcome, messageLength);
             }
             return true; // 继续显示原始消息
         });
         
-        // 注册所有消息事件监听器，确保捕获任何形式的游戏消息
-        ClientReceiveMessageEvents.ALLOW_GAME.register((message, overlay) -> {
+        // 游戏消息：插件格式的聊天和服务器公告，已显示在聊天框中的消息都会经过这里（ALLOW_GAME 放行的消息也一样）
+        ClientReceiveMessageEvents.GAME.register((message, overlay) -> {
+            MessageClassifiedEvent event = new MessageClassifiedEvent();
+            event.begin();
+            String outcome = "ignored";
+            int messageLength = 0;
             try {
                 String rawText = message.getString();
-                // 跳过命令和系统消息
-                if (isCommand(rawText) || SYSTEM_MESSAGE_PATTERN.matcher(rawText).find()) {
-                    return true;
-                }
-                
-                ChatTranslatorMod.LOGGER.info("[ALLOW_GAME] 收到消息: '{}'", rawText);
-                
-                if (ModConfig.isTranslationEnabled() && !isOwnMessage(rawText)) {
-                    // 检查是否是玩家聊天消息
-                    if (rawText.contains("<") && rawText.contains(">") && !rawText.startsWith("/")) {
-                        // 尝试提取发送者信息
-                        Matcher playerMatcher = PLAYER_MESSAGE_PATTERN.matcher(rawText);
-                        if (playerMatcher.find() && playerMatcher.groupCount() >= 2) {
-                            String playerName = playerMatcher.group(1);
-                            
-                            // 检查是否是当前玩家发送的消息
-                            if (isCurrentPlayer(playerName)) {
-                                ChatTranslatorMod.LOGGER.info("[ALLOW_GAME] 跳过当前玩家消息");
-                                return true;
-                            }
-                            
-                            String content = playerMatcher.group(2).trim();
-                            
-                            // 检查是否应该跳过翻译（中文或中文缩写）
-                            if (shouldSkipTranslation(content)) {
-                                ChatTranslatorMod.LOGGER.info("[ALLOW_GAME] 跳过中文内容或中文缩写: '{}'", content);
-                                return true;
-                            }
-                            
-                            // 记录消息发送者
-                            messageSenders.put(content, playerName);
-                        }
-                        
-                        processMessageLater(rawText);
-                    }
+                messageLength = rawText.length();
+                DiagnosticLog.trace("[GAME] 收到消息: '{}'", rawText);
+                // 动作栏中的消息不是聊天
+                if (!overlay) {
+                    outcome = handleMessage(rawText, getCurrentPlayerName(), null, false);
                 }
             } catch (Exception e) {
-                ChatTranslatorMod.LOGGER.error("处理ALLOW_GAME消息时发生错误", e);
+                ChatTranslatorMod.LOGGER.error("处理GAME消息时发生错误", e);
+                outcome = "error";
+            } finally {
+                commitClassification(event, "GAME", outcome, messageLength);
             }
-            // 必须返回true，不要阻止消息显示
-            return true;
         });
         
-        ClientReceiveMessageEvents.GAME.register((message, overlay) -> {
+        // 翻译流水线跟随服务器连接：进入世界时启动并预热，离开时停止，在菜单中完全空闲
+        ClientPlayConnectionEvents.JOIN.register((handler, sender, client) -> onWorldJoin(client));
+        ClientPlayConnectionEvents.DISCONNECT.register((handler, client) -> onWorldDisconnect());
+        
+        ChatTranslatorMod.LOGGER.info("聊天翻译监听器已注册! 等待玩家发送消息...");
+        ChatTranslatorMod.LOGGER.info("特别提示：尝试使用/translator status查看当前配置状态");
+    }
+    
+    private static void commitClassification(MessageClassifiedEvent event, String handler, String outcome, int messageLength) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.handler = handler;
+            event.outcome = outcome;
+            event.messageLength = messageLength;
+            event.commit();
+        }
+    }
+    
+    /**
+     * 所有消息事件共用的入口：按 MessageClassifier 的分类处理一条消息，离线回放工具也从这里送入消息
+     * @param rawText 消息文本
+     * @param currentPlayer 当前玩家名称，用于跳过自己的消息，可以为 null
+     * @param senderId 签名聊天的发送者，用于关联改名前后的语言画像，可以为 null
+     * @param chat 是否是玩家签名聊天：优先翻译，服务器翻译模式下由服务器翻译；其他消息可能是重复公告
+     * @return 处理结果，用于JFR事件和回放报告
+     */
+    static String handleMessage(String rawText, String currentPlayer, UUID senderId, boolean chat) {
+        if (!ModConfig.isTranslationEnabled()) {
+            return "ignored";
+        }
+        
+        MessageClassifier.Result result = MessageClassifier.classify(rawText, currentPlayer);
+        switch (result.outcome) {
+            case SYSTEM:
+                return "system";
+            case OWN:
+                DiagnosticLog.trace("跳过当前玩家消息: '{}'", result.content);
+                return "own";
+            case COMMAND:
+                DiagnosticLog.trace("跳过命令: '{}'", result.content);
+                return "command";
+            case NOT_CHAT:
+                return chat ? "ignored" : handleBroadcast(rawText);
+            default:
+                break;
+        }
+        
+        String playerName = result.playerName;
+        String content = result.content;
+        
+        // 积累发送者的语言画像（包括不需要翻译的消息）
+        if (senderId != null) {
+            SenderLanguageProfiles.observe(senderId, playerName);
+        }
+        SenderLanguageProfiles.record(playerName, content);
+        
+        if (result.outcome == MessageClassifier.Outcome.SKIPPED) {
+            DiagnosticLog.trace("跳过中文内容或中文缩写: '{}'", content);
+            return "skipped";
+        }
+        
+        // 服务器会把玩家聊天的翻译发过来，本地不再调用API
+        if (chat && ServerContext.isServerTranslationActive()) {
+            return "server";
+        }
+        
+        DiagnosticLog.trace("提取玩家消息: '{}' 说: '{}'", playerName, content);
+        
+        // 记录消息发送者
+        messageSenders.put(content, playerName);
+        
+        // add 的返回值同时完成检查和登记，两个线程收到同一条消息时只有一个会排队
+        if (!pendingTranslations.add(content)) {
+            DiagnosticLog.trace("跳过已在处理的消息: '{}'", content);
+            return "duplicate";
+        }
+        if (!enqueueTranslation(content, playerName, chat)) {
+            return ModConfig.isLazyTranslation() ? "lazy" : "ignored";
+        }
+        return "queued";
+    }
+    
+    // 不是玩家聊天格式的消息：固定的重复公告直接显示保存的译文，没有译文的留给空闲时补齐，都不进入翻译队列
+    private static String handleBroadcast(String text) {
+        String targetLanguage = ModConfig.getTargetLanguage();
+        if (!BroadcastStore.observe(text, targetLanguage, TranslationService.currentTimeMillis())) {
+            return "ignored";
+        }
+        String pinned = BroadcastStore.getTranslation(text, targetLanguage);
+        if (pinned == null || pinned.equals(text)) {
+            return "broadcast";
+        }
+        DiagnosticLog.count("broadcastHit");
+        // 公告没有发送者，以 [公告] 标签代替 <玩家名>
+        deliverTranslation(text, pinned, null, ModConfig.getTranslationDelay(), cancellationToken);
+        return "broadcastHit";
+    }
+    
+    private static synchronized ScheduledExecutorService getScheduler() {
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor();
+        }
+        return scheduler;
+    }
+    
+    private static void onWorldJoin(MinecraftClient client) {
+        ServerContext.onJoin(client);
+        ServerTranslationClient.sync();
+        String serverId = ServerContext.getServerId();
+        startTranslationQueueProcessor();
+        
+        // 读取配置和该服务器的翻译缓存、连接翻译接口等工作放到后台，不阻塞进入世界
+        getScheduler().execute(() -> {
             try {
-                String rawText = message.getString();
-                // 跳过命令和系统消息
-                if (isCommand(rawText) || SYSTEM_MESSAGE_PATTERN.matcher(rawText).find()) {
-                    return;
-                }
-                
-                ChatTranslatorMod.LOGGER.info("[GAME] 收到消息: '{}'", rawText);
-                
-                if (!overlay && ModConfig.isTranslationEnabled() && !isOwnMessage(rawText)) {
-                    // 尝试提取发送者信息
-                    Matcher playerMatcher = PLAYER_MESSAGE_PATTERN.matcher(rawText);
-                    if (playerMatcher.find() && playerMatcher.groupCount() >= 2) {
-                        String playerName = playerMatcher.group(1);
-                        
-                        // 检查是否是当前玩家发送的消息
-                        if (isCurrentPlayer(playerName)) {
-                            ChatTranslatorMod.LOGGER.info("[GAME] 跳过当前玩家消息");
-                            return;
-                        }
-                        
-                        String content = playerMatcher.group(2).trim();
-                        
-                        // 检查是否应该跳过翻译（中文或中文缩写）
-                        if (shouldSkipTranslation(content)) {
-                            ChatTranslatorMod.LOGGER.info("[GAME] 跳过中文内容或中文缩写: '{}'", content);
-                            return;
-                        }
-                        
-                        // 记录消息发送者
-                        messageSenders.put(content, playerName);
-                    }
-                    
-                    processMessage(message, rawText);
-                }
+                ModConfig.init();
+                TranslationCache.load(serverId);
+                SenderLanguageProfiles.load(serverId);
+                // 读取固定的公告，缺少的译文在空闲时补齐
+                BroadcastStore.load(serverId);
+                resumeJournal(serverId);
+                TranslationService.warmUpAsync();
             } catch (Exception e) {
-                ChatTranslatorMod.LOGGER.error("处理GAME消息时发生错误", e);
+                ChatTranslatorMod.LOGGER.error("预热翻译服务时发生错误", e);
             }
         });
+    }
+    
+    private static void onWorldDisconnect() {
+        stopTranslationQueueProcessor();
+        ServerContext.onDisconnect();
         
-        // 启动翻译队列处理器
-        startTranslationQueueProcessor();
+        leaveServer();
         
-        ChatTranslatorMod.LOGGER.info("聊天翻译监听器已注册! 等待玩家发送消息...");
-        ChatTranslatorMod.LOGGER.info("特别提示：尝试使用/translator status查看当前配置状态");
+        getScheduler().execute(() -> {
+            TranslationCache.unload();
+            SenderLanguageProfiles.unload();
+            BroadcastStore.unload();
+        });
+    }
+    
+    /**
+     * 取消翻译并立即解除翻译日志，离开服务器时调用
+     * 原版随后会清空聊天框，日志已经解除，之后的取消不会把待翻译记录标记为已丢弃
+     */
+    static void leaveServer() {
+        // 离开服务器后不再为旧消息调用API，日志中的待翻译记录保留到下次进入时继续
+        cancelPending("离开服务器", true);
+        WorldTextCache.clear();
+        LazyTranslation.clear();
+        TranslationJournal.unload();
+    }
+    
+    /**
+     * 读取服务器的翻译日志：已完成的译文写回缓存，继续上次离开时没有翻译完的消息
+     * @return 重新排队的消息数
+     */
+    static int resumeJournal(String serverId) {
+        int resumed = 0;
+        for (TranslationJournal.PendingEntry entry : TranslationJournal.load(serverId, ModConfig.getTargetLanguage())) {
+            if (resumePending(entry)) {
+                resumed++;
+            }
+        }
+        return resumed;
+    }
+    
+    /**
+     * @return 正在排队或翻译中的聊天消息原文
+     */
+    static Set<String> getPendingTranslations() {
+        return new HashSet<>(pendingTranslations);
+    }
+    
+    // 重新排队上次没有翻译完的消息，结果另起一条显示
+    private static boolean resumePending(TranslationJournal.PendingEntry entry) {
+        if (!ModConfig.isTranslationEnabled() || !pendingTranslations.add(entry.content)) {
+            return false;
+        }
+        if (entry.sender != null && !entry.sender.isEmpty()) {
+            messageSenders.put(entry.content, entry.sender);
+        }
+        DiagnosticLog.count("resumed");
+        enqueueTranslation(entry.content, entry.sender, false);
+        return true;
     }
     
     // 启动翻译队列处理器
-    private static void startTranslationQueueProcessor() {
-        SCHEDULER.scheduleAtFixedRate(() -> {
+    private static synchronized void startTranslationQueueProcessor() {
+        if (queueProcessor != null) {
+            return;
+        }
+        queueProcessor = getScheduler().scheduleAtFixedRate(() -> {
             try {
                 processTranslationQueue();
             } catch (Exception e) {
@@ -286,361 +335,460 @@ public class ChatMessageListener {
         }, 0, 100, TimeUnit.MILLISECONDS); // 每100毫秒检查一次队列
     }
     
-    // 处理翻译队列
-    private static void processTranslationQueue() {
+    // 停止翻译队列处理器
+    private static synchronized void stopTranslationQueueProcessor() {
+        if (queueProcessor != null) {
+            queueProcessor.cancel(false);
+            queueProcessor = null;
+        }
+    }
+    
+    // 处理翻译队列，由队列处理器每100毫秒调用一次（离线回放工具按虚拟时钟调用）
+    static void processTranslationQueue() {
+        DiagnosticLog.logSummaryIfDue();
         if (translationQueue.isEmpty()) {
+            processIdleWork();
             return;
         }
         
-        long currentTime = System.currentTimeMillis();
+        // 自建接口没有间隔限制，按并发上限一次派发多个请求
+        if (TranslationService.getRequestInterval() <= 0) {
+            int maxInFlight = TranslationService.getMaxConcurrentRequests();
+            while (inFlightTranslations.get() < maxInFlight) {
+                FairTranslationQueue.Request request = pollNextRequest();
+                if (request == null) {
+                    break;
+                }
+                dispatchRequest(request);
+            }
+            return;
+        }
+        
+        long currentTime = TranslationService.currentTimeMillis();
         long lastCall = lastApiCallTime.get();
-        long timeSinceLastCall = currentTime - lastCall;
         
-        // 检查是否满足API调用频率限制
-        if (lastCall > 0 && timeSinceLastCall < API_RATE_LIMIT_MS) {
-            // 未满足频率限制，稍后再尝试
+        // 先占用本次调用的时间窗口再取请求，未满足频率限制时稍后再尝试
+        if (!tryAcquireApiWindow(lastApiCallTime, lastCall, currentTime)) {
             return;
         }
         
         // 从队列中取出一个请求
-        TranslationRequest request = translationQueue.poll();
+        FairTranslationQueue.Request request = pollNextRequest();
         if (request == null) {
+            releaseApiWindow(lastApiCallTime, currentTime, lastCall);
             return;
         }
         
-        // 检查是否应该跳过翻译（中文或中文缩写）
-        if (shouldSkipTranslation(request.content)) {
-            ChatTranslatorMod.LOGGER.info("[翻译队列] 跳过包含中文或中文缩写的内容: '{}'", request.content);
-            pendingTranslations.remove(request.content);
-            return;
-        }
-        
-        // 更新最后调用时间
-        lastApiCallTime.set(currentTime);
-        
-        // 执行翻译
-        if (request.immediate) {
-            translateMessageWithRateLimit(request.content);
-        } else {
-            translateAndSendWithRateLimit(request.content);
+        // 命中缓存的请求不占用API调用次数，归还时间窗口
+        if (TranslationCache.contains(request.content, ModConfig.getTargetLanguage())) {
+            releaseApiWindow(lastApiCallTime, currentTime, lastCall);
         }
+        dispatchRequest(request);
     }
     
-    // 将消息添加到翻译队列
-    private static void enqueueTranslation(String content, boolean immediate) {
-        translationQueue.add(new TranslationRequest(content, immediate));
+    // 距离上次调用满足间隔时用CAS记下本次调用时间，多个线程同时检查时只有一个能占到这个窗口
+    static boolean tryAcquireApiWindow(AtomicLong window, long lastCall, long now) {
+        if (lastCall > 0 && now - lastCall < API_RATE_LIMIT_MS) {
+            return false;
+        }
+        return window.compareAndSet(lastCall, now);
     }
     
-    // 检查消息是否是命令
-    private static boolean isCommand(String text) {
-        return text.startsWith("/") || COMMAND_PATTERN.matcher(text).matches();
+    // 没有用上的窗口恢复为占用前的时间；期间其他线程已经占用了新窗口时不做修改
+    static void releaseApiWindow(AtomicLong window, long acquired, long previous) {
+        window.compareAndSet(acquired, previous);
     }
     
-    // 检查是否是当前玩家发送的消息
-    private static boolean isCurrentPlayer(String playerName) {
-        MinecraftClient client = MinecraftClient.getInstance();
-        if (client.player != null && playerName != null) {
-            String currentPlayerName = client.player.getName().getString();
-            return playerName.equalsIgnoreCase(currentPlayerName);
+    // 聊天消息全部处理完后，以低优先级补齐固定公告的译文，再翻译告示牌、书和物品说明
+    private static void processIdleWork() {
+        String targetLanguage = ModConfig.getTargetLanguage();
+        if (TranslationService.getRequestInterval() <= 0) {
+            int maxInFlight = TranslationService.getMaxConcurrentRequests();
+            String text;
+            while (inFlightTranslations.get() < maxInFlight && (text = LazyTranslation.pollPrefetch()) != null) {
+                dispatchPrefetch(text);
+            }
+            while (inFlightTranslations.get() < maxInFlight && (text = BroadcastStore.pollMissing(targetLanguage)) != null) {
+                dispatchBroadcast(text, targetLanguage);
+            }
+            while (inFlightTranslations.get() < maxInFlight && (text = WorldTextCache.pollPending()) != null) {
+                dispatchWorldText(text);
+            }
+            return;
+        }
+        
+        // 有间隔限制的接口一次只翻译一条，并且不和正在进行的聊天翻译抢名额
+        long currentTime = TranslationService.currentTimeMillis();
+        long lastCall = lastApiCallTime.get();
+        if (inFlightTranslations.get() > 0 || !tryAcquireApiWindow(lastApiCallTime, lastCall, currentTime)) {
+            return;
+        }
+        // 按需翻译模式下先预先翻译最新的几条聊天
+        String recent = LazyTranslation.pollPrefetch();
+        if (recent != null) {
+            dispatchPrefetch(recent);
+            return;
+        }
+        String broadcast = BroadcastStore.pollMissing(targetLanguage);
+        if (broadcast != null) {
+            dispatchBroadcast(broadcast, targetLanguage);
+            return;
+        }
+        String text = WorldTextCache.pollPending();
+        if (text != null) {
+            dispatchWorldText(text);
+        } else {
+            // 没有需要翻译的内容，归还时间窗口
+            releaseApiWindow(lastApiCallTime, currentTime, lastCall);
         }
-        return false;
     }
     
-    private static void translateMessageWithRateLimit(String content) {
-        CompletableFuture<String> futureTranslation = TranslationService.translateAsync(content);
-        futureTranslation.thenAccept(translatedText -> {
-            try {
-                pendingTranslations.remove(content);
-                
-                if (translatedText != null && !translatedText.trim().isEmpty() && !translatedText.equals(content)) {
-                    // 检查是否包含API限制错误
-                    if (translatedText.contains("免费用户接口访问频率") || translatedText.contains("something went wrong")) {
-                        ChatTranslatorMod.LOGGER.info("[翻译队列] 检测到API频率限制，将消息重新排队: '{}'", content);
-                        // 重新入队，设置为非立即处理，让其按队列顺序处理
-                        pendingTranslations.add(content);
-                        enqueueTranslation(content, false);
-                        return;
-                    }
-                    
-                    ChatTranslatorMod.LOGGER.info("[翻译队列] 翻译结果: '{}' -> '{}'", content, translatedText);
-                    
-                    // 获取消息发送者
-                    String sender = messageSenders.getOrDefault(content, "未知玩家");
-                    messageSenders.remove(content); // 使用后移除，避免内存泄漏
-                    
-                    MutableText translatedMessage = createTranslatedMessage(content, translatedText, sender);
-                    
-                    // 在游戏中显示翻译结果
-                    MinecraftClient.getInstance().execute(() -> {
-                        sendTranslationToChat(translatedMessage);
-                    });
-                }
-            } catch (Exception e) {
-                ChatTranslatorMod.LOGGER.error("处理翻译结果时发生错误", e);
-            }
-        }).exceptionally(e -> {
-            pendingTranslations.remove(content);
-            ChatTranslatorMod.LOGGER.error("翻译过程中发生错误", e);
-            return null;
+    private static void dispatchPrefetch(String text) {
+        inFlightTranslations.incrementAndGet();
+        String sourceLanguage = SenderLanguageProfiles.getSourceLanguage(null, text, ModConfig.getSourceLanguage());
+        CancellationToken token = cancellationToken;
+        TranslationService.translateAsync(text, 0, sourceLanguage, token).whenComplete((result, error) -> {
+            inFlightTranslations.decrementAndGet();
+            // 被取消的不算失败，之后可以立即重新预先翻译
+            LazyTranslation.complete(text, token.isCancelled() || (error == null && !TranslationService.isErrorResult(result)));
         });
     }
     
-    private static void processMessageLater(String textContent) {
-        // 如果是命令或系统消息，直接跳过
-        if (isCommand(textContent) || SYSTEM_MESSAGE_PATTERN.matcher(textContent).find()) {
-            return;
-        }
-        
-        // 不需要太多处理，主要是捕获玩家聊天消息格式
-        if (textContent.contains("<") && textContent.contains(">")) {
-            // 检查是否为当前玩家消息
-            Matcher playerMatcher = PLAYER_MESSAGE_PATTERN.matcher(textContent);
-            if (playerMatcher.find() && playerMatcher.groupCount() >= 2) {
-                String playerName = playerMatcher.group(1);
-                if (isCurrentPlayer(playerName)) {
-                    ChatTranslatorMod.LOGGER.info("[延迟处理] 跳过当前玩家消息");
-                    return;
-                }
+    private static void dispatchBroadcast(String text, String targetLanguage) {
+        inFlightTranslations.incrementAndGet();
+        String sourceLanguage = SenderLanguageProfiles.getSourceLanguage(null, text, ModConfig.getSourceLanguage());
+        TranslationService.translateAsync(text, 0, sourceLanguage, targetLanguage, cancellationToken).whenComplete((result, error) -> {
+            inFlightTranslations.decrementAndGet();
+            if (error == null && !TranslationService.isErrorResult(result)) {
+                BroadcastStore.complete(text, targetLanguage, result);
+            } else {
+                BroadcastStore.fail(text);
             }
-            
-            // 以延迟方式处理，避免与主线程冲突
-            SCHEDULER.schedule(() -> {
-                if (!pendingTranslations.contains(textContent)) {
-                    ChatTranslatorMod.LOGGER.info("[延迟处理] 检测到可能的玩家消息: '{}'", textContent);
-                    processRawMessage(textContent);
-                }
-            }, 100, TimeUnit.MILLISECONDS);
-        }
+        });
     }
     
-    private static void processRawMessage(String rawText) {
-        // 如果是命令或系统消息，直接跳过
-        if (isCommand(rawText) || SYSTEM_MESSAGE_PATTERN.matcher(rawText).find()) {
-            return;
-        }
-        
-        // 尝试匹配玩家消息格式
-        Matcher playerMatcher = PLAYER_MESSAGE_PATTERN.matcher(rawText);
-        if (!playerMatcher.find()) {
-            playerMatcher = ALT_PLAYER_MESSAGE_PATTERN.matcher(rawText);
-        }
-        
-        if (playerMatcher.find() && playerMatcher.groupCount() >= 2) {
-            String playerName = playerMatcher.group(1);
-            
-            // 检查是否是当前玩家
-            if (isCurrentPlayer(playerName)) {
-                ChatTranslatorMod.LOGGER.info("[原始处理] 跳过当前玩家消息");
-                return;
+    private static void dispatchWorldText(String text) {
+        inFlightTranslations.incrementAndGet();
+        String sourceLanguage = SenderLanguageProfiles.getSourceLanguage(null, text, ModConfig.getSourceLanguage());
+        TranslationService.translateAsync(text, 0, sourceLanguage, cancellationToken).whenComplete((result, error) -> {
+            inFlightTranslations.decrementAndGet();
+            WorldTextCache.complete(text, result, error == null && !TranslationService.isErrorResult(result));
+        });
+    }
+    
+    // 按发送者轮询取出下一个请求，跳过不需要翻译的内容
+    private static FairTranslationQueue.Request pollNextRequest() {
+        while (true) {
+            FairTranslationQueue.Request request = translationQueue.poll(TranslationService.currentTimeMillis(),
+                    ModConfig.getMaxMessageAgeMs(), ModConfig.getMaxInFlightPerSender());
+            if (request == null) {
+                return null;
             }
             
-            String content = playerMatcher.group(2).trim();
-            
-            // 再次检查内容是否是命令
-            if (isCommand(content)) {
-                ChatTranslatorMod.LOGGER.info("[原始处理] 跳过命令: '{}'", content);
-                return;
+            // 检查是否应该跳过翻译（中文或中文缩写）
+            if (shouldSkipTranslation(request.content)) {
+                DiagnosticLog.trace("[翻译队列] 跳过包含中文或中文缩写的内容: '{}'", request.content);
+                pendingTranslations.remove(request.content);
+                TranslationJournal.discard(request.content, ModConfig.getTargetLanguage());
+                translationQueue.complete(request);
+                continue;
             }
             
-            ChatTranslatorMod.LOGGER.info("[原始处理] 提取玩家消息: '{}' 说: '{}'", playerName, content);
-            
-            // 记录消息发送者
-            messageSenders.put(content, playerName);
-            
-            if (!pendingTranslations.contains(content)) {
-                pendingTranslations.add(content);
-                enqueueTranslation(content, false);
+            // 发送者确定使用目标语言、这条消息也没有识别出其他语言时不调用API
+            String detected = LanguageDetector.detect(request.content);
+            if ((detected == null || detected.equals(ModConfig.getTargetLanguage()))
+                    && SenderLanguageProfiles.usesLanguage(request.sender, ModConfig.getTargetLanguage())) {
+                DiagnosticLog.trace("[翻译队列] 发送者使用目标语言，跳过: '{}'", request.content);
+                DiagnosticLog.count("knownLanguage");
+                pendingTranslations.remove(request.content);
+                TranslationJournal.discard(request.content, ModConfig.getTargetLanguage());
+                translationQueue.complete(request);
+                continue;
             }
+            return request;
         }
     }
     
-    private static boolean isOwnMessage(String content) {
-        return content.contains("[原文]") || 
-               content.contains("[译文]") || 
-               content.contains("[译]");
+    // 执行翻译
+    private static void dispatchRequest(FairTranslationQueue.Request request) {
+        inFlightTranslations.incrementAndGet();
+        if (request.immediate) {
+            translateMessageWithRateLimit(request);
+        } else {
+            translateAndSendWithRateLimit(request);
+        }
     }
     
-    private static void processMessage(Text message, String textContent) {
-        // 如果是命令或系统消息，直接跳过
-        if (isCommand(textContent) || SYSTEM_MESSAGE_PATTERN.matcher(textContent).find()) {
-            return;
+    // 将消息添加到翻译队列，返回是否已排队
+    private static boolean enqueueTranslation(String content, String sender, boolean immediate) {
+        // 不在世界中（例如消息在断开连接后才到达）时不再排队；
+        // 按需翻译模式下由聊天框中的点击和悬停触发翻译
+        if (ServerContext.getServerId() == null || ModConfig.isLazyTranslation()) {
+            pendingTranslations.remove(content);
+            messageSenders.remove(content);
+            return false;
         }
+        // 先写入日志，入队时因溢出被丢弃的消息随后记为已丢弃
+        TranslationJournal.pending(content, sender, ModConfig.getTargetLanguage());
+        long now = TranslationService.currentTimeMillis();
+        translationQueue.offer(new FairTranslationQueue.Request(content, sender, immediate, now),
+                ModConfig.getQueueCapacity(), now);
+        DiagnosticLog.count("queued");
+        return true;
+    }
+    
+    /**
+     * 取消所有排队和进行中的翻译，进行中的请求被中断，尚未显示的结果不再显示
+     * 日志中的待翻译记录一并标记为已丢弃，下次进入服务器时不再继续翻译
+     * @param reason 取消原因，只用于日志
+     */
+    public static void cancelPending(String reason) {
+        cancelPending(reason, false);
+    }
+    
+    /**
+     * @param resumable 是否保留日志中的待翻译记录（离开服务器、清空聊天框时为 true）
+     */
+    public static void cancelPending(String reason, boolean resumable) {
+        CancellationToken previous = cancellationToken;
+        cancellationToken = new CancellationToken();
+        previous.cancel();
         
-        ChatTranslatorMod.LOGGER.info("处理消息: '{}'", textContent);
-        
-        // 尝试匹配标准玩家消息格式
-        Matcher playerMatcher = PLAYER_MESSAGE_PATTERN.matcher(textContent);
-        // 如果标准格式不匹配，尝试备用格式
-        if (!playerMatcher.find()) {
-            playerMatcher = ALT_PLAYER_MESSAGE_PATTERN.matcher(textContent);
+        int dropped = translationQueue.size();
+        translationQueue.clear();
+        pendingTranslations.clear();
+        messageSenders.clear();
+        TranslationOutbox.clear();
+        if (!resumable) {
+            TranslationJournal.discardPending();
         }
-        
-        if (playerMatcher.find() && playerMatcher.groupCount() >= 2) {
-            String playerName = playerMatcher.group(1);
-            
-            // 检查是否是当前玩家
-            if (isCurrentPlayer(playerName)) {
-                ChatTranslatorMod.LOGGER.info("跳过当前玩家消息");
-                return;
-            }
-            
-            String content = playerMatcher.group(2).trim();
-            
-            // 再次检查内容是否是命令
-            if (isCommand(content)) {
-                ChatTranslatorMod.LOGGER.info("跳过命令: '{}'", content);
-                return;
-            }
-            
-            ChatTranslatorMod.LOGGER.info("检测到玩家消息: '{}' 说: '{}'", playerName, content);
-            
-            // 记录消息发送者
-            messageSenders.put(content, playerName);
-            
-            // 避免重复翻译
-            if (!pendingTranslations.contains(content)) {
-                pendingTranslations.add(content);
-                enqueueTranslation(content, false);
-            } else {
-                ChatTranslatorMod.LOGGER.info("跳过已在处理的消息: '{}'", content);
-            }
-        } else if (!SYSTEM_MESSAGE_PATTERN.matcher(textContent).find()) {
-            // 检查是否是命令
-            if (isCommand(textContent)) {
-                ChatTranslatorMod.LOGGER.info("跳过命令: '{}'", textContent);
+        if (dropped > 0) {
+            ChatTranslatorMod.LOGGER.info("{}，取消{}条待翻译消息", reason, dropped);
+        }
+    }
+    
+    /**
+     * @return 当前的取消标记，调用 cancelPending 后由新的标记替换
+     */
+    public static CancellationToken getCancellationToken() {
+        return cancellationToken;
+    }
+    
+    // 消息因队列已满或超时被丢弃
+    private static void onRequestShed(FairTranslationQueue.Request request) {
+        pendingTranslations.remove(request.content);
+        messageSenders.remove(request.content);
+        TranslationJournal.discard(request.content, ModConfig.getTargetLanguage());
+        DiagnosticLog.count("shed");
+        DiagnosticLog.trace("[翻译队列] 丢弃消息: '{}'", request.content);
+    }
+    
+    // 翻译结束后释放并发名额
+    private static void finishRequest(FairTranslationQueue.Request request) {
+        inFlightTranslations.decrementAndGet();
+        translationQueue.complete(request);
+    }
+    
+    /**
+     * @return 因队列已满被丢弃的消息数
+     */
+    public static long getShedOverflowCount() {
+        return translationQueue.getShedOverflow();
+    }
+    
+    /**
+     * @return 因等待超时被丢弃的消息数
+     */
+    public static long getShedExpiredCount() {
+        return translationQueue.getShedExpired();
+    }
+    
+    /**
+     * @return 队列中等待翻译的消息数
+     */
+    public static int getQueuedCount() {
+        return translationQueue.size();
+    }
+    
+    // 取出并移除消息的发送者（使用后移除，避免内存泄漏），一次 remove 完成，不会和其他线程的写入交错
+    static String takeSender(Map<String, String> senders, String content) {
+        String sender = senders.remove(content);
+        return sender != null ? sender : "未知玩家";
+    }
+    
+    // 按发送者的语言画像指定源语言，避免翻译接口每次自动检测
+    private static String getSourceLanguage(FairTranslationQueue.Request request) {
+        return SenderLanguageProfiles.getSourceLanguage(request.sender, request.content, ModConfig.getSourceLanguage());
+    }
+    
+    // 当前玩家名称，不在世界中时返回 null
+    private static String getCurrentPlayerName() {
+        MinecraftClient client = MinecraftClient.getInstance();
+        return client.player != null ? client.player.getName().getString() : null;
+    }
+    
+    private static void translateMessageWithRateLimit(FairTranslationQueue.Request request) {
+        String content = request.content;
+        CancellationToken token = cancellationToken;
+        CompletableFuture<String> futureTranslation = TranslationService.translateAsync(content, request.id, getSourceLanguage(request), token)
+                .whenComplete((result, error) -> finishRequest(request));
+        futureTranslation.thenAccept(translatedText -> {
+            // 已取消的请求不再修改队列状态，也不显示结果
+            if (token.isCancelled()) {
                 return;
             }
-            
-            // 未匹配到玩家聊天格式，但也不是系统消息，可能是其他格式的聊天
-            ChatTranslatorMod.LOGGER.info("检测到其他消息格式: '{}'", textContent);
-            
-            // 检查是否包含 "[CHAT]" 或 "<>"，这可能表示是玩家聊天但格式不同
-            if (textContent.contains("[CHAT]") || (textContent.contains("<") && textContent.contains(">"))) {
-                ChatTranslatorMod.LOGGER.info("疑似聊天消息: '{}'", textContent);
-                
-                // 尝试提取尖括号中的内容和之后的文本
-                Pattern extractPattern = Pattern.compile(".*<([^>]+)>\\s*(.+)");
-                Matcher extractMatcher = extractPattern.matcher(textContent);
+            try {
+                if (TranslationService.isErrorResult(translatedText)) {
+                    handleFailure(request, translatedText);
+                    return;
+                }
+                pendingTranslations.remove(content);
                 
-                if (extractMatcher.find()) {
-                    String playerName = extractMatcher.group(1);
-                    
-                    // 检查是否是当前玩家
-                    if (isCurrentPlayer(playerName)) {
-                        ChatTranslatorMod.LOGGER.info("跳过当前玩家消息");
-                        return;
-                    }
-                    
-                    String content = extractMatcher.group(2).trim();
-                    
-                    // 再次检查内容是否是命令
-                    if (isCommand(content)) {
-                        ChatTranslatorMod.LOGGER.info("跳过命令: '{}'", content);
-                        return;
-                    }
-                    
-                    ChatTranslatorMod.LOGGER.info("提取到玩家 '{}' 的消息: '{}'", playerName, content);
+                if (!translatedText.trim().isEmpty() && !translatedText.equals(content)) {
+                    DiagnosticLog.trace("[翻译队列] 翻译结果: '{}' -> '{}'", content, translatedText);
+                    TranslationJournal.complete(content, ModConfig.getTargetLanguage(), translatedText);
                     
-                    // 记录消息发送者
-                    messageSenders.put(content, playerName);
+                    // 获取消息发送者
+                    String sender = takeSender(messageSenders, content);
                     
-                    if (!pendingTranslations.contains(content)) {
-                        pendingTranslations.add(content);
-                        enqueueTranslation(content, false);
-                    }
-                    return;
+                    // 在游戏中显示翻译结果
+                    deliverTranslation(content, translatedText, sender, 0, token);
+                } else {
+                    TranslationJournal.discard(content, ModConfig.getTargetLanguage());
                 }
+            } catch (Exception e) {
+                ChatTranslatorMod.LOGGER.error("处理翻译结果时发生错误", e);
             }
-            
-            // 避免重复翻译，同时排除非玩家消息和命令
-            if (!pendingTranslations.contains(textContent) && !textContent.contains("/")) {
-                pendingTranslations.add(textContent);
-                enqueueTranslation(textContent, false);
-            } else {
-                ChatTranslatorMod.LOGGER.info("跳过已在处理的消息或非玩家消息: '{}'", textContent);
+        }).exceptionally(e -> {
+            if (!token.isCancelled()) {
+                pendingTranslations.remove(content);
+                TranslationJournal.discard(content, ModConfig.getTargetLanguage());
+                DiagnosticLog.failure("translate message", e);
             }
-        } else {
-            ChatTranslatorMod.LOGGER.info("跳过系统消息: '{}'", textContent);
-        }
+            return null;
+        });
     }
-
-    private static void translateAndSendWithRateLimit(String content) {
+    
+    private static void translateAndSendWithRateLimit(FairTranslationQueue.Request request) {
+        String content = request.content;
         if (content == null || content.trim().isEmpty()) {
-            ChatTranslatorMod.LOGGER.debug("空内容，跳过翻译");
+            DiagnosticLog.trace("空内容，跳过翻译");
             pendingTranslations.remove(content);
+            TranslationJournal.discard(content, ModConfig.getTargetLanguage());
+            finishRequest(request);
             return;
         }
         
         // 检查是否是命令
         if (isCommand(content)) {
-            ChatTranslatorMod.LOGGER.info("跳过命令: '{}'", content);
+            DiagnosticLog.trace("跳过命令: '{}'", content);
             pendingTranslations.remove(content);
+            TranslationJournal.discard(content, ModConfig.getTargetLanguage());
+            finishRequest(request);
             return;
         }
         
-        ChatTranslatorMod.LOGGER.info("正在翻译: '{}'", content);
-        CompletableFuture<String> futureTranslation = TranslationService.translateAsync(content);
+        DiagnosticLog.trace("正在翻译: '{}'", content);
+        CancellationToken token = cancellationToken;
+        CompletableFuture<String> futureTranslation = TranslationService.translateAsync(content, request.id, getSourceLanguage(request), token)
+                .whenComplete((result, error) -> finishRequest(request));
         int translationDelay = ModConfig.getTranslationDelay();
         
         futureTranslation.thenAccept(translatedText -> {
+            // 已取消的请求不再修改队列状态，也不显示结果
+            if (token.isCancelled()) {
+                return;
+            }
+            
+            if (TranslationService.isErrorResult(translatedText)) {
+                handleFailure(request, translatedText);
+                return;
+            }
+            
             // 从待处理集合中移除
             pendingTranslations.remove(content);
             
-            if (translatedText != null && !translatedText.trim().isEmpty() && !translatedText.equals(content)) {
-                // 检查是否包含API限制错误
-                if (translatedText.contains("免费用户接口访问频率") || translatedText.contains("something went wrong")) {
-                    ChatTranslatorMod.LOGGER.info("[翻译队列] 检测到API频率限制，将消息重新排队: '{}'", content);
-                    // 重新入队，让其按队列顺序处理
-                    pendingTranslations.add(content);
-                    enqueueTranslation(content, false);
-                    return;
-                }
+            if (!translatedText.trim().isEmpty() && !translatedText.equals(content)) {
+                DiagnosticLog.trace("翻译结果: '{}' -> '{}'", content, translatedText);
+                TranslationJournal.complete(content, ModConfig.getTargetLanguage(), translatedText);
                 
-                ChatTranslatorMod.LOGGER.info("翻译结果: '{}' -> '{}'", content, translatedText);
+                // 翻译期间被识别为重复公告时保存译文
+                BroadcastStore.complete(content, ModConfig.getTargetLanguage(), translatedText);
                 
                 // 获取消息发送者
-                String sender = messageSenders.getOrDefault(content, "未知玩家");
-                messageSenders.remove(content); // 使用后移除，避免内存泄漏
-                
-                MutableText translatedMessage = createTranslatedMessage(content, translatedText, sender);
+                String sender = takeSender(messageSenders, content);
                 
-                if (translationDelay > 0) {
-                    SCHEDULER.schedule(() -> {
-                        MinecraftClient.getInstance().execute(() -> {
-                            sendTranslationToChat(translatedMessage);
-                        });
-                    }, translationDelay, TimeUnit.MILLISECONDS);
-                } else {
-                    MinecraftClient.getInstance().execute(() -> {
-                        sendTranslationToChat(translatedMessage);
-                    });
-                }
+                deliverTranslation(content, translatedText, sender, translationDelay, token);
             } else {
-                ChatTranslatorMod.LOGGER.info("跳过翻译: '{}'", content);
+                DiagnosticLog.trace("跳过翻译: '{}'", content);
+                TranslationJournal.discard(content, ModConfig.getTargetLanguage());
             }
         }).exceptionally(e -> {
+            if (token.isCancelled()) {
+                return null;
+            }
+            
             // 从待处理集合中移除
             pendingTranslations.remove(content);
+            TranslationJournal.discard(content, ModConfig.getTargetLanguage());
             
-            ChatTranslatorMod.LOGGER.error("翻译过程中发生错误", e);
+            DiagnosticLog.failure("translate message", e);
             return null;
         });
     }
 
-    private static MutableText createTranslatedMessage(String original, String translated, String sender) {
+    // 翻译失败：频率限制在退避后重新排队，保留原来的入队时间，等待超时后照常丢弃；
+    // 其他错误（网络、HTTP 状态、密钥）以及重试次数用完时放弃这条消息
+    private static void handleFailure(FairTranslationQueue.Request request, String result) {
+        boolean rateLimited = TranslationService.isRateLimited(result);
+        if (rateLimited && request.attempts < MAX_ATTEMPTS) {
+            long backoff = RETRY_BACKOFF_MS << (request.attempts - 1);
+            DiagnosticLog.trace("[翻译队列] 检测到API频率限制，{}毫秒后重试: '{}'", backoff, request.content);
+            DiagnosticLog.count("requeued");
+            long now = TranslationService.currentTimeMillis();
+            translationQueue.offer(request.retry(now + backoff), ModConfig.getQueueCapacity(), now);
+            return;
+        }
+        
+        DiagnosticLog.trace("[翻译队列] 放弃翻译: '{}' ({})", request.content, result);
+        DiagnosticLog.count(rateLimited ? "retryExhausted" : "dropped");
+        pendingTranslations.remove(request.content);
+        messageSenders.remove(request.content);
+        TranslationJournal.discard(request.content, ModConfig.getTargetLanguage());
+    }
+    
+    // 按显示方式交付译文：附加到原消息行上，或交给发件箱在客户端 tick 中另起一条显示
+    private static void deliverTranslation(String content, String translated, String sender, int delay, CancellationToken token) {
+        Consumer<String> observer = deliveryObserver;
+        if (observer != null) {
+            observer.accept(content);
+        }
+        Runnable asMessage = () -> TranslationOutbox.offer(createTranslatedMessage(content, translated, sender), delay, token);
+        if (ModConfig.isInPlaceDisplay()) {
+            ChatLineAnnotator.annotateLive(content, translated, token, asMessage);
+        } else {
+            asMessage.run();
+        }
+    }
+
+    /**
+     * @param sender 发送者，为 null 时表示服务器公告，以 [公告] 标签代替 <玩家名>
+     */
+    static MutableText createTranslatedMessage(String original, String translated, String sender) {
         MutableText messageText;
         
         if (ModConfig.shouldShowOriginalMessage()) {
             // 显示原文和译文，同时显示发送者
-            messageText = Text.literal("<" + sender + "> ").formatted(Formatting.AQUA)
+            messageText = senderLabel(sender)
                     .append(Text.literal("[原文] ").formatted(Formatting.GRAY))
                     .append(Text.literal(original).formatted(Formatting.WHITE))
-                    .append(Text.literal("\n<" + sender + "> ").formatted(Formatting.AQUA))
+                    .append(Text.literal("\n"))
+                    .append(senderLabel(sender))
                     .append(Text.literal("[译文] ").formatted(Formatting.GOLD))
                     .append(Text.literal(translated).formatted(Formatting.WHITE));
         } else {
             // 仅显示翻译，但也显示发送者
-            messageText = Text.literal("<" + sender + "> ").formatted(Formatting.AQUA)
+            messageText = senderLabel(sender)
                     .append(Text.literal("[译] ").formatted(Formatting.GOLD))
                     .append(Text.literal(translated).formatted(Formatting.WHITE));
         }
@@ -648,13 +796,9 @@ public class ChatMessageListener {
         return messageText;
     }
 
-    private static void sendTranslationToChat(Text translatedMessage) {
-        MinecraftClient client = MinecraftClient.getInstance();
-        if (client.player != null) {
-            ChatTranslatorMod.LOGGER.info("发送翻译消息到聊天框: '{}'", translatedMessage.getString());
-            client.inGameHud.getChatHud().addMessage(translatedMessage);
-        } else {
-            ChatTranslatorMod.LOGGER.warn("无法发送翻译消息：玩家对象为空");
-        }
+    private static MutableText senderLabel(String sender) {
+        return sender != null
+                ? Text.literal("<" + sender + "> ").formatted(Formatting.AQUA)
+                : Text.literal("[公告] ").formatted(Formatting.YELLOW);
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,61 @@
+package com.trator.chatranslator;
+
+import com.trator.chatranslator.command.ConfigCommand;
+import com.trator.chatranslator.config.ModConfig;
+import net.fabricmc.api.ClientModInitializer;
+import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientTickEvents;
+import net.fabricmc.fabric.api.client.keybinding.v1.KeyBindingHelper;
+import net.minecraft.client.option.KeyBinding;
+import org.lwjgl.glfw.GLFW;
+
+import static com.trator.chatranslator.ChatTranslatorMod.LOGGER;
+
+/**
+ * 客户端入口，专用服务器上不会加载这个类和其中引用的客户端类
+ */
+public class ChatTranslatorClient implements ClientModInitializer {
+    
+    private static KeyBinding toggleTranslationKey;
+    
+    @Override
+    public void onInitializeClient() {
+        // 注册配置命令（客户端命令只存在于客户端）
+        ConfigCommand.register();
+        
+        // 注册聊天消息监听器
+        ChatMessageListener.register();
+        
+        // 翻译结果在每个客户端 tick 结束时统一写入聊天框
+        TranslationOutbox.register();
+        
+        // 服务器支持时由服务器统一翻译
+        ServerTranslationClient.register();
+        
+        // 初始化按键绑定
+        initKeyBindings();
+        
+        LOGGER.info("translator client initialized successfully by kmno4");
+    }
+    
+    private void initKeyBindings() {
+        toggleTranslationKey = KeyBindingHelper.registerKeyBinding(new KeyBinding(
+                "key.chatranslator.toggle",
+                GLFW.GLFW_KEY_T,
+                "key.categories.chatranslator"
+        ));
+        
+        ClientTickEvents.END_CLIENT_TICK.register(client -> {
+            if (toggleTranslationKey.wasPressed()) {
+                ModConfig.toggleTranslation();
+                ChatMessageListener.cancelPending("切换翻译开关");
+                ServerTranslationClient.sync();
+                if (client.player != null) {
+                    boolean enabled = ModConfig.isTranslationEnabled();
+                    client.player.sendMessage(net.minecraft.text.Text.literal(
+                            enabled ? "聊天翻译ON" : "聊天翻译OFF"
+                    ), false);
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,251 @@
+package com.trator.chatranslator;
+
+import com.trator.chatranslator.diagnostics.QueueEvent;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * 按发送者轮询的有界翻译队列
+ * 每个发送者有自己的子队列，出队时轮流从各发送者取消息，单个刷屏玩家不会饿死其他人；
+ * 队列满时从积压最多的发送者丢弃最旧的消息，超过最大等待时间的消息在调用API前直接丢弃；
+ * 遇到频率限制重新排队的消息保留原来的入队时间，在退避时间到达前不会被取出
+ */
+public class FairTranslationQueue {
+
+    private static final AtomicLong NEXT_ID = new AtomicLong(1);
+
+    // 翻译请求
+    public static class Request {
+        public final long id;
+        public final String content;
+        public final String sender;
+        public final boolean immediate;
+        public final long enqueuedAt;
+        // 第几次尝试，从 1 开始
+        public final int attempts;
+        // 早于此时间（毫秒）不取出，用于重试退避
+        public final long notBefore;
+
+        public Request(String content, String sender, boolean immediate, long enqueuedAt) {
+            this(NEXT_ID.getAndIncrement(), content, sender == null ? "" : sender, immediate, enqueuedAt, 1, 0);
+        }
+
+        private Request(long id, String content, String sender, boolean immediate, long enqueuedAt,
+                        int attempts, long notBefore) {
+            this.id = id;
+            this.content = content;
+            this.sender = sender;
+            this.immediate = immediate;
+            this.enqueuedAt = enqueuedAt;
+            this.attempts = attempts;
+            this.notBefore = notBefore;
+        }
+
+        /**
+         * @return 下一次尝试的请求，编号和入队时间不变，等待超时仍按第一次入队计算
+         */
+        public Request retry(long notBefore) {
+            return new Request(id, content, sender, false, enqueuedAt, attempts + 1, notBefore);
+        }
+    }
+
+    private final Map<String, ArrayDeque<Request>> queues = new HashMap<>();
+    private final ArrayDeque<String> rotation = new ArrayDeque<>(); // 有待处理消息的发送者，按轮询顺序
+    private final Map<String, Integer> inFlight = new HashMap<>();
+    private final Consumer<Request> onShed;
+
+    private int size;
+    private long shedOverflow;
+    private long shedExpired;
+
+    /**
+     * @param onShed 消息因队列已满或超时被丢弃时的回调（持有队列锁时调用，应当尽量简单）
+     */
+    public FairTranslationQueue(Consumer<Request> onShed) {
+        this.onShed = onShed;
+    }
+
+    /**
+     * 入队，队列已满时丢弃积压最多的发送者最旧的一条消息
+     * @param capacity 队列总容量
+     * @param now 当前时间（毫秒），与 poll 使用同一个时钟
+     */
+    public synchronized void offer(Request request, int capacity, long now) {
+        if (size >= Math.max(1, capacity)) {
+            shedLongestQueue(now);
+        }
+
+        ArrayDeque<Request> queue = queues.get(request.sender);
+        if (queue == null) {
+            queue = new ArrayDeque<>();
+            queues.put(request.sender, queue);
+            rotation.addLast(request.sender);
+        }
+        queue.addLast(request);
+        size++;
+        recordQueueEvent(request, "enqueue", request.enqueuedAt);
+    }
+
+    /**
+     * 轮询出队，同时丢弃已超时的消息
+     * @param now 当前时间（毫秒）
+     * @param maxAgeMs 消息最长等待时间，0 表示不限制
+     * @param maxInFlightPerSender 单个发送者同时进行中的翻译上限
+     * @return 下一个需要翻译的请求，没有可处理的请求时返回 null
+     */
+    public synchronized Request poll(long now, long maxAgeMs, int maxInFlightPerSender) {
+        int senders = rotation.size();
+        for (int i = 0; i < senders; i++) {
+            String sender = rotation.pollFirst();
+            ArrayDeque<Request> queue = queues.get(sender);
+
+            if (maxAgeMs > 0) {
+                // 重新排队的消息在队尾但入队时间更早，所以检查整个子队列
+                Iterator<Request> iterator = queue.iterator();
+                while (iterator.hasNext()) {
+                    Request request = iterator.next();
+                    if (now - request.enqueuedAt > maxAgeMs) {
+                        iterator.remove();
+                        shed(request, false, now);
+                    }
+                }
+            }
+
+            if (queue.isEmpty()) {
+                queues.remove(sender);
+                continue;
+            }
+
+            Request request = inFlight.getOrDefault(sender, 0) >= Math.max(1, maxInFlightPerSender)
+                    ? null : takeReady(queue, now);
+            if (request == null) {
+                // 该发送者已达到并发上限或消息都在退避中，轮到下一个
+                rotation.addLast(sender);
+                continue;
+            }
+            size--;
+            inFlight.merge(sender, 1, Integer::sum);
+            recordQueueEvent(request, "dequeue", now);
+
+            if (queue.isEmpty()) {
+                queues.remove(sender);
+            } else {
+                rotation.addLast(sender);
+            }
+            return request;
+        }
+        return null;
+    }
+
+    /**
+     * 翻译完成（无论成功与否）后调用，释放发送者的并发名额
+     */
+    public synchronized void complete(Request request) {
+        Integer count = inFlight.get(request.sender);
+        if (count == null) {
+            return;
+        }
+        if (count <= 1) {
+            inFlight.remove(request.sender);
+        } else {
+            inFlight.put(request.sender, count - 1);
+        }
+    }
+
+    public synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized void clear() {
+        queues.clear();
+        rotation.clear();
+        size = 0;
+    }
+
+    /**
+     * @return 因队列已满被丢弃的消息数
+     */
+    public synchronized long getShedOverflow() {
+        return shedOverflow;
+    }
+
+    /**
+     * @return 因等待超时被丢弃的消息数
+     */
+    public synchronized long getShedExpired() {
+        return shedExpired;
+    }
+
+    // 取出发送者最早一条已过退避时间的消息
+    private static Request takeReady(ArrayDeque<Request> queue, long now) {
+        Iterator<Request> iterator = queue.iterator();
+        while (iterator.hasNext()) {
+            Request request = iterator.next();
+            if (request.notBefore <= now) {
+                iterator.remove();
+                return request;
+            }
+        }
+        return null;
+    }
+
+    private void shedLongestQueue(long now) {
+        String longest = null;
+        int longestSize = 0;
+        for (Map.Entry<String, ArrayDeque<Request>> entry : queues.entrySet()) {
+            if (entry.getValue().size() > longestSize) {
+                longest = entry.getKey();
+                longestSize = entry.getValue().size();
+            }
+        }
+        if (longest == null) {
+            return;
+        }
+
+        ArrayDeque<Request> queue = queues.get(longest);
+        shed(queue.pollFirst(), true, now);
+        if (queue.isEmpty()) {
+            queues.remove(longest);
+            Iterator<String> iterator = rotation.iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().equals(longest)) {
+                    iterator.remove();
+                    break;
+                }
+            }
+        }
+    }
+
+    private void shed(Request request, boolean overflow, long now) {
+        size--;
+        if (overflow) {
+            shedOverflow++;
+        } else {
+            shedExpired++;
+        }
+        recordQueueEvent(request, overflow ? "shed-overflow" : "shed-expired", now);
+        onShed.accept(request);
+    }
+
+    // JFR未录制时 shouldCommit 返回 false，事件对象会被JIT消除
+    private void recordQueueEvent(Request request, String action, long now) {
+        QueueEvent event = new QueueEvent();
+        if (event.shouldCommit()) {
+            event.messageId = request.id;
+            event.action = action;
+            event.messageLength = request.content.length();
+            event.queueSize = size;
+            event.waitedMillis = now - request.enqueuedAt;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package com.trator.chatranslator;
+
+import com.trator.chatranslator.cache.TranslationCache;
+import com.trator.chatranslator.config.ModConfig;
+import com.trator.chatranslator.diagnostics.DiagnosticLog;
+import com.trator.chatranslator.network.CancellationToken;
+import com.trator.chatranslator.network.TranslationService;
+import com.trator.chatranslator.profile.SenderLanguageProfiles;
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.text.ClickEvent;
+import net.minecraft.text.HoverEvent;
+import net.minecraft.text.Style;
+import net.minecraft.text.Text;
+import net.minecraft.util.Formatting;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按需翻译模式
+ * 聊天消息不再全部排队翻译，而是在显示时附上点击事件：鼠标悬停时在提示框中显示译文，
+ * 点击时把译文发到聊天框。只有玩家实际看的消息才调用API，另外在空闲时预先翻译最新的几条
+ */
+public class LazyTranslation {
+    public static final String COMMAND = "/translator show ";
+
+    // 最多记住的消息数，更早的消息点击后提示已过期
+    private static final int MAX_ENTRIES = 256;
+    // 空闲时预先翻译的最新消息数
+    private static final int PREFETCH_COUNT = 3;
+    // 翻译失败后多久才允许悬停时重新请求（毫秒），避免每帧都请求
+    private static final long RETRY_MS = 10_000;
+    // 预先翻译正在进行同一条消息时，悬停过多久再查一次缓存（毫秒）
+    private static final long RECHECK_MS = 500;
+
+    private static final HoverEvent TRANSLATING = new HoverEvent(HoverEvent.Action.SHOW_TEXT,
+            Text.literal("翻译中...").formatted(Formatting.GRAY));
+    private static final HoverEvent FAILED_HOVER = new HoverEvent(HoverEvent.Action.SHOW_TEXT,
+            Text.literal("翻译失败，稍后重试").formatted(Formatting.RED));
+
+    private static class Entry {
+        final String sender;
+        final String content;
+
+        Entry(String sender, String content) {
+            this.sender = sender;
+            this.content = content;
+        }
+    }
+
+    // 一行消息悬停时显示的内容
+    private static class HoverState {
+        final HoverEvent event; // null 表示消息已过期，保持原来的提示
+        final String targetLanguage;
+        final long retryAt; // 到这个时间后重新查找，0 表示不再变化
+
+        HoverState(HoverEvent event, String targetLanguage, long retryAt) {
+            this.event = event;
+            this.targetLanguage = targetLanguage;
+            this.retryAt = retryAt;
+        }
+    }
+
+    // 以下状态由 ENTRIES 的锁保护
+    private static final Map<Integer, Entry> ENTRIES = new LinkedHashMap<Integer, Entry>(64, 0.75f, false) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Entry> eldest) {
+            if (size() <= MAX_ENTRIES) {
+                return false;
+            }
+            HOVERS.remove(eldest.getKey());
+            return true;
+        }
+    };
+    private static final Deque<Integer> RECENT = new ArrayDeque<>();
+    private static int nextId;
+
+    // 正在翻译的原文
+    private static final Set<String> REQUESTED = ConcurrentHashMap.newKeySet();
+    // 翻译失败的原文 -> 失败时间
+    private static final Map<String, Long> FAILED = new ConcurrentHashMap<>();
+
+    // 行编号 -> 悬停时显示的内容，渲染线程每帧不加锁读取；查缓存和发请求都在后台进行
+    private static final Map<Integer, HoverState> HOVERS = new ConcurrentHashMap<>();
+    // 正在后台查找或翻译的行编号
+    private static final Set<Integer> LOOKUPS = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 写入聊天框前调用，需要翻译的玩家消息附上悬停和点击事件，其他消息原样返回
+     */
+    public static Text decorate(Text message) {
+        if (message == null || !ModConfig.isLazyTranslation() || !ModConfig.isTranslationEnabled()) {
+            return message;
+        }
+
+        MinecraftClient client = MinecraftClient.getInstance();
+        String currentPlayer = client.player != null ? client.player.getName().getString() : null;
+        MessageClassifier.Result result = MessageClassifier.classify(message.getString(), currentPlayer);
+        if (result.outcome != MessageClassifier.Outcome.TRANSLATE
+                // 本模组自己输出的原文/译文行
+                || MessageClassifier.SYSTEM_MESSAGE_PATTERN.matcher(result.content).find()
+                || SenderLanguageProfiles.usesLanguage(result.playerName, ModConfig.getTargetLanguage())) {
+            return message;
+        }
+
+        int id;
+        synchronized (ENTRIES) {
+            id = nextId++;
+            ENTRIES.put(id, new Entry(result.playerName, result.content));
+            RECENT.addFirst(id);
+            while (RECENT.size() > PREFETCH_COUNT) {
+                RECENT.removeLast();
+            }
+        }
+        DiagnosticLog.count("lazy");
+
+        // 子文本没有设置自己的事件时继承这里的事件，玩家名上原有的事件保持不变
+        return message.copy().styled(style -> style
+                .withClickEvent(new ClickEvent(ClickEvent.Action.RUN_COMMAND, COMMAND + id))
+                .withHoverEvent(new HoverEvent(HoverEvent.Action.SHOW_TEXT,
+                        Text.literal("点击翻译").formatted(Formatting.GRAY))));
+    }
+
+    /**
+     * 鼠标悬停在聊天框文字上时在渲染线程上每帧调用，把提示框换成译文
+     * 只读取已经准备好的结果，还没有时在后台查缓存或开始翻译
+     */
+    public static Style onHover(Style style) {
+        int id = getId(style);
+        if (id < 0) {
+            return style;
+        }
+
+        HoverState state = HOVERS.get(id);
+        if (state != null && !state.targetLanguage.equals(ModConfig.getTargetLanguage())) {
+            state = null;
+        }
+        if ((state == null || (state.retryAt > 0 && System.currentTimeMillis() >= state.retryAt)) && LOOKUPS.add(id)) {
+            Thread.ofVirtual().name("chatranslator-hover").start(() -> resolve(id));
+        }
+        if (state == null) {
+            return style.withHoverEvent(TRANSLATING);
+        }
+        return state.event != null ? style.withHoverEvent(state.event) : style;
+    }
+
+    // 在后台查缓存，没有译文时开始翻译，结果写入 HOVERS
+    private static void resolve(int id) {
+        String targetLanguage = ModConfig.getTargetLanguage();
+        Entry entry = getEntry(id);
+        if (entry == null) {
+            HOVERS.put(id, new HoverState(null, targetLanguage, 0));
+            LOOKUPS.remove(id);
+            return;
+        }
+
+        String translated = TranslationCache.get(entry.content, targetLanguage);
+        if (translated != null) {
+            HOVERS.put(id, translatedState(translated, targetLanguage));
+            LOOKUPS.remove(id);
+            return;
+        }
+
+        CompletableFuture<String> future = request(entry.content);
+        if (future == null) {
+            // 刚失败过，或者预先翻译正在进行，稍后再查
+            Long failedAt = FAILED.get(entry.content);
+            HOVERS.put(id, failedAt != null
+                    ? new HoverState(FAILED_HOVER, targetLanguage, failedAt + RETRY_MS)
+                    : new HoverState(TRANSLATING, targetLanguage, System.currentTimeMillis() + RECHECK_MS));
+            LOOKUPS.remove(id);
+            return;
+        }
+        future.whenComplete((result, error) -> {
+            if (error == null && !TranslationService.isErrorResult(result)) {
+                HOVERS.put(id, translatedState(result, targetLanguage));
+            } else if (FAILED.containsKey(entry.content)) {
+                HOVERS.put(id, new HoverState(FAILED_HOVER, targetLanguage, System.currentTimeMillis() + RETRY_MS));
+            } else {
+                // 被取消，下次悬停时重新翻译
+                HOVERS.remove(id);
+            }
+            LOOKUPS.remove(id);
+        });
+    }
+
+    private static HoverState translatedState(String translated, String targetLanguage) {
+        return new HoverState(new HoverEvent(HoverEvent.Action.SHOW_TEXT,
+                Text.literal(translated).formatted(Formatting.WHITE)), targetLanguage, 0);
+    }
+
+    /**
+     * 点击消息时调用，把译文发到聊天框
+     * @return 消息是否还记得
+     */
+    public static boolean show(int id) {
+        Entry entry = getEntry(id);
+        if (entry == null) {
+            return false;
+        }
+        String sender = entry.sender != null ? entry.sender : "未知玩家";
+        // 关闭翻译或离开服务器后不再显示
+        CancellationToken token = ChatMessageListener.getCancellationToken();
+        TranslationService.translateAsync(entry.content, id,
+                SenderLanguageProfiles.getSourceLanguage(entry.sender, entry.content, ModConfig.getSourceLanguage()),
+                token)
+                .thenAccept(translated -> {
+                    if (translated != null && !TranslationService.isErrorResult(translated)) {
+                        TranslationOutbox.offer(ChatMessageListener.createTranslatedMessage(entry.content, translated, sender), 0, token);
+                    }
+                });
+        return true;
+    }
+
+    /**
+     * 取出一条最新的、还没有译文的消息，用于空闲时预先翻译，没有时返回 null
+     */
+    public static String pollPrefetch() {
+        if (!ModConfig.isLazyTranslation()) {
+            return null;
+        }
+        String targetLanguage = ModConfig.getTargetLanguage();
+        synchronized (ENTRIES) {
+            while (!RECENT.isEmpty()) {
+                Entry entry = ENTRIES.get(RECENT.pollFirst());
+                if (entry != null && !TranslationCache.contains(entry.content, targetLanguage)
+                        && REQUESTED.add(entry.content)) {
+                    return entry.content;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 预先翻译结束后调用
+     */
+    public static void complete(String content, boolean success) {
+        if (!success) {
+            FAILED.put(content, System.currentTimeMillis());
+        }
+        REQUESTED.remove(content);
+    }
+
+    public static void clear() {
+        synchronized (ENTRIES) {
+            ENTRIES.clear();
+            RECENT.clear();
+        }
+        REQUESTED.clear();
+        FAILED.clear();
+        HOVERS.clear();
+        LOOKUPS.clear();
+    }
+
+    /**
+     * @return 翻译结束（失败状态已记录）后完成的 future，刚失败过或已经在翻译时不发请求，返回 null
+     */
+    private static CompletableFuture<String> request(String content) {
+        Long failedAt = FAILED.get(content);
+        if (failedAt != null) {
+            if (System.currentTimeMillis() - failedAt < RETRY_MS) {
+                return null;
+            }
+            FAILED.remove(content);
+        }
+        // 预先翻译或上一次悬停已经在翻译时不再重复请求
+        if (!REQUESTED.add(content)) {
+            return null;
+        }
+        CancellationToken token = ChatMessageListener.getCancellationToken();
+        return TranslationService.translateAsync(content, 0,
+                SenderLanguageProfiles.getSourceLanguage(null, content, ModConfig.getSourceLanguage()), token)
+                .whenComplete((result, error) -> complete(content,
+                        token.isCancelled() || (error == null && !TranslationService.isErrorResult(result))));
+    }
+
+    private static Entry getEntry(int id) {
+        synchronized (ENTRIES) {
+            return ENTRIES.get(id);
+        }
+    }
+
+    // 每帧调用，直接解析命令中的编号，不创建子字符串
+    private static int getId(Style style) {
+        ClickEvent click = style == null ? null : style.getClickEvent();
+        String value = click == null || click.getAction() != ClickEvent.Action.RUN_COMMAND ? null : click.getValue();
+        if (value == null || !value.startsWith(COMMAND) || value.length() == COMMAND.length()
+                || value.length() - COMMAND.length() > 9) {
+            return -1;
+        }
+        int id = 0;
+        for (int i = COMMAND.length(); i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            id = id * 10 + (c - '0');
+        }
+        return id;
+    }
+}
@@ -0,0 +1,148 @@
+package com.trator.chatranslator;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 聊天消息分类
+ * 不依赖游戏客户端，监听器和离线回放工具使用同一套规则判断消息是否需要翻译
+ */
+public class MessageClassifier {
+    // 匹配系统消息、已翻译消息等不需要处理的内容
+    public static final Pattern SYSTEM_MESSAGE_PATTERN = Pattern.compile("^\\[系统\\]|^\\[译|^\\[原文]|\\[(.+)加入了游戏\\]|\\[(.+)离开了游戏\\]");
+    
+    // 玩家聊天消息模式 - 包括普通聊天(<Player> message)和安全聊天格式
+    public static final Pattern PLAYER_MESSAGE_PATTERN = Pattern.compile("<([^>]+)>\\s+(.+)");
+    
+    // 命令消息格式 - 用于过滤掉命令
+    private static final Pattern COMMAND_PATTERN = Pattern.compile("^/.*");
+    
+    // 备用玩家消息格式，用于匹配可能的不同格式
+    public static final Pattern ALT_PLAYER_MESSAGE_PATTERN = Pattern.compile("\\[CHAT\\]\\s+<([^>]+)>\\s+(.+)");
+    
+    // 检测中文字符的正则表达式
+    private static final Pattern CHINESE_PATTERN = Pattern.compile("[\\u4e00-\\u9fa5]");
+    
+    // 常见中文网络缩写
+    private static final Set<String> CHINESE_ABBREVIATIONS = new HashSet<>(Arrays.asList(
+        "gg", "nb", "xswl", "nmsl", "sb", "lz", "fvv", "fw", "233"
+    ));
+    
+    // 分类结果
+    public enum Outcome {
+        TRANSLATE, // 需要翻译的玩家消息
+        SYSTEM,    // 系统消息或已翻译的消息
+        COMMAND,   // 命令
+        OWN,       // 当前玩家自己发送的消息
+        SKIPPED,   // 中文或中文缩写，不需要翻译
+        NOT_CHAT   // 不是玩家聊天格式
+    }
+
+    public static class Result {
+        public final Outcome outcome;
+        public final String playerName;
+        public final String content;
+
+        Result(Outcome outcome, String playerName, String content) {
+            this.outcome = outcome;
+            this.playerName = playerName;
+            this.content = content;
+        }
+    }
+
+    /**
+     * 判断一条原始消息是否需要翻译，并提取发送者和内容
+     * @param rawText 消息文本，例如 "<Steve> hello" 或 "[CHAT] <Steve> hello"
+     * @param currentPlayerName 当前玩家名称，用于跳过自己的消息，可以为 null
+     */
+    public static Result classify(String rawText, String currentPlayerName) {
+        // 如果是命令、系统消息或已翻译的消息，直接跳过
+        if (isCommand(rawText) || SYSTEM_MESSAGE_PATTERN.matcher(rawText).find() || isOwnMessage(rawText)) {
+            return new Result(Outcome.SYSTEM, null, null);
+        }
+
+        // 尝试匹配玩家消息格式
+        Matcher playerMatcher = PLAYER_MESSAGE_PATTERN.matcher(rawText);
+        if (!playerMatcher.find()) {
+            playerMatcher = ALT_PLAYER_MESSAGE_PATTERN.matcher(rawText);
+            if (!playerMatcher.find()) {
+                return new Result(Outcome.NOT_CHAT, null, null);
+            }
+        }
+
+        String playerName = playerMatcher.group(1);
+        String content = playerMatcher.group(2).trim();
+
+        // 检查是否是当前玩家
+        if (currentPlayerName != null && playerName.equalsIgnoreCase(currentPlayerName)) {
+            return new Result(Outcome.OWN, playerName, content);
+        }
+
+        // 再次检查内容是否是命令
+        if (isCommand(content)) {
+            return new Result(Outcome.COMMAND, playerName, content);
+        }
+
+        if (shouldSkipTranslation(content)) {
+            return new Result(Outcome.SKIPPED, playerName, content);
+        }
+
+        return new Result(Outcome.TRANSLATE, playerName, content);
+    }
+
+    // 检查消息是否是命令
+    public static boolean isCommand(String text) {
+        return text.startsWith("/") || COMMAND_PATTERN.matcher(text).matches();
+    }
+    
+    // 检查消息是否是本模组输出的翻译
+    public static boolean isOwnMessage(String content) {
+        return content.contains("[原文]") || 
+               content.contains("[译文]") || 
+               content.contains("[译]");
+    }
+    
+    // 检查消息是否包含中文字符
+    public static boolean containsChineseCharacters(String text) {
+        if (text == null || text.isEmpty()) {
+            return false;
+        }
+        return CHINESE_PATTERN.matcher(text).find();
+    }
+    
+    // 检查消息是否是中文网络缩写
+    public static boolean isChineseAbbreviation(String text) {
+        if (text == null || text.isEmpty()) {
+            return false;
+        }
+        
+        // 将消息转换为小写并清除空格进行比较
+        String normalized = text.toLowerCase().trim();
+        
+        // 检查完整消息是否匹配
+        if (CHINESE_ABBREVIATIONS.contains(normalized)) {
+            return true;
+        }
+        
+        // 检查消息是否只包含这些缩写
+        for (String abbr : CHINESE_ABBREVIATIONS) {
+            // 如果消息只包含缩写加一些标点或空格
+            if (normalized.matches("\\s*" + Pattern.quote(abbr) + "\\s*[!?,.。！？，]*\\s*")) {
+                return true;
+            }
+        }
+        
+        return false;
+    }
+    
+    // 检查消息是否应该被跳过翻译（包含中文或是中文缩写）
+    public static boolean shouldSkipTranslation(String content) {
+        if (content == null || content.isEmpty()) {
+            return true;
+        }
+        return containsChineseCharacters(content) || isChineseAbbreviation(content);
+    }
+}
@@ -0,0 +1,171 @@
+package com.trator.chatranslator;
+
+import com.trator.chatranslator.config.ModConfig;
+import com.trator.chatranslator.diagnostics.DiagnosticLog;
+import com.trator.chatranslator.network.TranslationService;
+import net.minecraft.text.Text;
+import net.minecraft.util.Formatting;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 发出消息的预翻译
+ * 玩家在聊天框输入时，停顿一小段时间后在后台翻译当前内容；同一时间只有一个请求在进行，
+ * 期间输入的内容只保留最新的一条，请求结束后再翻译，中间的内容直接丢弃。
+ * 按下回车时译文通常已经准备好，发送不需要等待翻译接口
+ */
+public class OutgoingTranslator {
+    // 停止输入多久后开始翻译（毫秒）
+    private static final long DEBOUNCE_MS = 400;
+    // 最多保留的译文数，删改后回到之前的内容时可以直接使用
+    private static final int MAX_RESULTS = 16;
+    // 聊天消息的长度上限，超出时服务器会断开连接
+    private static final int MAX_MESSAGE_LENGTH = 256;
+
+    private static ScheduledExecutorService scheduler;
+    private static ScheduledFuture<?> debounce;
+
+    // 以下状态都由 OutgoingTranslator.class 的锁保护
+    private static final Map<String, String> RESULTS = new LinkedHashMap<String, String>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > MAX_RESULTS;
+        }
+    };
+    // 正在翻译的内容，没有时为 null
+    private static String inFlight;
+    // 等待当前请求结束后翻译的最新内容
+    private static String latest;
+
+    // 当前提供方能否翻译成发出语言，按配置版本缓存：聊天框每次变化都要判断，不必每次都经过 getProvider 的锁
+    private static volatile int supportRevision = -1;
+    private static volatile boolean outgoingSupported;
+
+    private static synchronized ScheduledExecutorService getScheduler() {
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "chatranslator-outgoing");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return scheduler;
+    }
+
+    /**
+     * 聊天框内容变化时在客户端线程上调用
+     */
+    public static synchronized void onInput(String chatText) {
+        if (debounce != null) {
+            debounce.cancel(false);
+            debounce = null;
+        }
+
+        String text = chatText == null ? "" : chatText.trim();
+        if (!isEnabled() || text.isEmpty() || MessageClassifier.isCommand(text)) {
+            latest = null;
+            return;
+        }
+        latest = text;
+        if (RESULTS.containsKey(text)) {
+            return;
+        }
+        debounce = getScheduler().schedule(OutgoingTranslator::startLatest, DEBOUNCE_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 发送消息时在客户端线程上调用
+     * @return 已经准备好的译文，还没有时返回原文
+     */
+    public static String takeTranslation(String message) {
+        if (!isEnabled() || MessageClassifier.isCommand(message)) {
+            return message;
+        }
+        String translated;
+        synchronized (OutgoingTranslator.class) {
+            translated = RESULTS.get(message.trim());
+        }
+        if (translated == null) {
+            DiagnosticLog.count("outgoingMiss");
+            TranslationOutbox.offer(Text.literal("[译] 翻译尚未完成，已发送原文").formatted(Formatting.GRAY), 0);
+            return message;
+        }
+        if (translated.length() > MAX_MESSAGE_LENGTH) {
+            TranslationOutbox.offer(Text.literal("[译] 译文超过聊天长度限制，已发送原文").formatted(Formatting.GRAY), 0);
+            return message;
+        }
+        DiagnosticLog.count("outgoingHit");
+        return translated;
+    }
+
+    /**
+     * 聊天框关闭时调用，丢弃还没开始的翻译
+     */
+    public static synchronized void reset() {
+        if (debounce != null) {
+            debounce.cancel(false);
+            debounce = null;
+        }
+        latest = null;
+    }
+
+    /**
+     * @return 是否翻译发出的消息；当前翻译接口做不到发出语言时不启用，否则会把其他语言当作译文发出去
+     */
+    public static boolean isEnabled() {
+        String language = ModConfig.getOutgoingLanguage();
+        return ModConfig.isTranslationEnabled() && language != null && supportsOutgoingLanguage(language);
+    }
+
+    // 提供方和发出语言都来自配置，配置版本不变时沿用上次的结果
+    private static boolean supportsOutgoingLanguage(String language) {
+        int revision = ModConfig.getRevision();
+        if (revision != supportRevision) {
+            outgoingSupported = TranslationService.supportsTargetLanguage(language);
+            supportRevision = revision;
+        }
+        return outgoingSupported;
+    }
+
+    // 没有请求在进行时翻译最新的内容，否则等当前请求结束后再翻译
+    private static void startLatest() {
+        String text;
+        synchronized (OutgoingTranslator.class) {
+            text = latest;
+            if (text == null || inFlight != null || RESULTS.containsKey(text)) {
+                return;
+            }
+            inFlight = text;
+        }
+
+        String targetLanguage = ModConfig.getOutgoingLanguage();
+        if (targetLanguage == null) {
+            finish(text, null);
+            return;
+        }
+        // 玩家自己的语言就是收到消息时翻译成的目标语言；译文以玩家名义发出，不使用近似命中的缓存
+        TranslationService.translateOutgoingAsync(text, ModConfig.getTargetLanguage(), targetLanguage)
+                .whenComplete((result, error) -> finish(text,
+                        error == null && !TranslationService.isErrorResult(result) ? result : null));
+    }
+
+    private static void finish(String text, String translated) {
+        boolean next;
+        synchronized (OutgoingTranslator.class) {
+            inFlight = null;
+            if (translated != null && !translated.isBlank()) {
+                RESULTS.put(text, translated);
+            }
+            // 还在等待停顿的内容由延迟任务开始翻译
+            next = (debounce == null || debounce.isDone()) && latest != null && !latest.equals(text) && !RESULTS.containsKey(latest);
+        }
+        if (next) {
+            startLatest();
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.trator.chatranslator;
+
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.client.network.ServerInfo;
+
+/**
+ * 当前所在服务器的标识，用于区分按服务器保存的数据
+ */
+public class ServerContext {
+    private static volatile String serverId;
+    // 服务器是否正在替我们翻译玩家聊天
+    private static volatile boolean serverTranslationActive;
+
+    // 进入世界时根据服务器地址确定标识
+    public static void onJoin(MinecraftClient client) {
+        ServerInfo serverInfo = client.getCurrentServerEntry();
+        if (client.isInSingleplayer() || serverInfo == null) {
+            onJoin("singleplayer");
+        } else {
+            onJoin(serverInfo.address);
+        }
+    }
+
+    // 离线回放工具没有客户端，直接指定服务器标识
+    static void onJoin(String id) {
+        serverId = id;
+    }
+
+    public static void onDisconnect() {
+        serverId = null;
+        serverTranslationActive = false;
+    }
+
+    /**
+     * @return 当前服务器标识，不在世界中时返回 null
+     */
+    public static String getServerId() {
+        return serverId;
+    }
+
+    public static boolean isServerTranslationActive() {
+        return serverTranslationActive;
+    }
+
+    public static void setServerTranslationActive(boolean active) {
+        serverTranslationActive = active;
+    }
+}
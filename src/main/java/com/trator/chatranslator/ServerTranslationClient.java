@@ -0,0 +1,48 @@
+package com.trator.chatranslator;
+
+import com.trator.chatranslator.config.ModConfig;
+import com.trator.chatranslator.diagnostics.DiagnosticLog;
+import com.trator.chatranslator.server.TranslatedChatPayload;
+import com.trator.chatranslator.server.TranslationOptInPayload;
+import net.fabricmc.fabric.api.client.networking.v1.C2SPlayChannelEvents;
+import net.fabricmc.fabric.api.client.networking.v1.ClientPlayNetworking;
+
+/**
+ * 客户端与服务器翻译模式的对接
+ * 服务器注册了翻译频道时，向服务器登记目标语言，之后玩家聊天由服务器统一翻译，本地不再调用API
+ */
+public class ServerTranslationClient {
+
+    public static void register() {
+        // 服务器声明支持翻译频道后再登记，进入世界时频道列表可能还没有同步
+        C2SPlayChannelEvents.REGISTER.register((handler, sender, client, channels) -> {
+            if (channels.contains(TranslationOptInPayload.ID.id())) {
+                sync();
+            }
+        });
+
+        ClientPlayNetworking.registerGlobalReceiver(TranslatedChatPayload.ID, (payload, context) -> {
+            if (!ServerContext.isServerTranslationActive() || !ModConfig.isTranslationEnabled()) {
+                return;
+            }
+            DiagnosticLog.trace("[服务器翻译] '{}' -> '{}'", payload.original(), payload.translated());
+            TranslationOutbox.offer(ChatMessageListener.createTranslatedMessage(
+                    payload.original(), payload.translated(), payload.sender()), ModConfig.getTranslationDelay());
+        });
+    }
+
+    /**
+     * 按当前配置向服务器登记或取消目标语言，翻译开关、目标语言或服务器翻译设置变化时调用
+     */
+    public static void sync() {
+        if (ServerContext.getServerId() == null || !ClientPlayNetworking.canSend(TranslationOptInPayload.ID)) {
+            ServerContext.setServerTranslationActive(false);
+            return;
+        }
+
+        boolean active = ModConfig.isServerTranslation() && ModConfig.isTranslationEnabled();
+        ClientPlayNetworking.send(new TranslationOptInPayload(active ? ModConfig.getTargetLanguage() : ""));
+        ServerContext.setServerTranslationActive(active);
+        ChatTranslatorMod.LOGGER.info("server-side translation {}", active ? "enabled" : "disabled");
+    }
+}
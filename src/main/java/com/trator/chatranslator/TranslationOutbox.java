@@ -0,0 +1,160 @@
+package com.trator.chatranslator;
+
+import com.trator.chatranslator.config.ModConfig;
+import com.trator.chatranslator.diagnostics.ChatDeliveryEvent;
+import com.trator.chatranslator.network.CancellationToken;
+import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientTickEvents;
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.text.MutableText;
+import net.minecraft.text.Text;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * 翻译结果发件箱
+ * 工作线程只负责把结果放进按延迟分开的无锁队列，由客户端线程在每个 tick 结束时按预算统一写入聊天框，
+ * 避免积压的翻译在同一帧里集中调用 ChatHud.addMessage 造成卡顿
+ */
+public class TranslationOutbox {
+    // 同一次写入最多合并的翻译条数
+    private static final int MAX_MERGED_MESSAGES = 4;
+
+    // 延迟（毫秒）-> 该延迟的消息；同一延迟的消息按放入顺序到期，只需检查每个队列的队头，
+    // 延迟较长的消息不会挡住之后放入、需要立即显示的消息
+    private static final Map<Long, Queue<PendingMessage>> OUTBOX = new ConcurrentHashMap<>();
+
+    private static class PendingMessage {
+        final Text message;
+        final long deliverAt; // System.nanoTime() 时间戳
+        final CancellationToken token;
+
+        PendingMessage(Text message, long deliverAt, CancellationToken token) {
+            this.message = message;
+            this.deliverAt = deliverAt;
+            this.token = token;
+        }
+    }
+
+    public static void register() {
+        ClientTickEvents.END_CLIENT_TICK.register(TranslationOutbox::drain);
+    }
+
+    /**
+     * 将翻译结果放入发件箱，可以在任意线程调用
+     * @param message 需要显示的消息
+     * @param delayMs 至少延迟多少毫秒后显示
+     */
+    public static void offer(Text message, long delayMs) {
+        offer(message, delayMs, CancellationToken.NONE);
+    }
+
+    /**
+     * 将翻译结果放入发件箱，标记在显示前被取消时丢弃
+     */
+    public static void offer(Text message, long delayMs, CancellationToken token) {
+        OUTBOX.computeIfAbsent(delayMs, k -> new ConcurrentLinkedQueue<>())
+                .add(new PendingMessage(message, System.nanoTime() + delayMs * 1_000_000L, token));
+    }
+
+    /**
+     * @return 尚未写入聊天框的消息数量
+     */
+    public static int size() {
+        int size = 0;
+        for (Queue<PendingMessage> queue : OUTBOX.values()) {
+            size += queue.size();
+        }
+        return size;
+    }
+
+    public static void clear() {
+        for (Queue<PendingMessage> queue : OUTBOX.values()) {
+            queue.clear();
+        }
+    }
+
+    // 取出到期最早的一条消息，没有到期的消息时返回 null
+    private static PendingMessage pollDue(long now) {
+        while (true) {
+            Queue<PendingMessage> earliestQueue = null;
+            PendingMessage earliest = null;
+            for (Queue<PendingMessage> queue : OUTBOX.values()) {
+                PendingMessage head = queue.peek();
+                if (head != null && head.deliverAt - now <= 0
+                        && (earliest == null || head.deliverAt - earliest.deliverAt < 0)) {
+                    earliestQueue = queue;
+                    earliest = head;
+                }
+            }
+            // 只有客户端线程取出消息，队头不变时一定能移除；被其他线程清空时重新查找
+            if (earliest == null || earliestQueue.remove(earliest)) {
+                return earliest;
+            }
+        }
+    }
+
+    // 在客户端线程上按数量和时间预算写入聊天框
+    private static void drain(MinecraftClient client) {
+        int pending = size();
+        if (pending == 0) {
+            return;
+        }
+
+        if (client.player == null) {
+            ChatTranslatorMod.LOGGER.warn("无法发送翻译消息：玩家对象为空，丢弃{}条翻译", pending);
+            clear();
+            return;
+        }
+
+        ChatDeliveryEvent event = new ChatDeliveryEvent();
+        event.begin();
+        int delivered = 0;
+
+        long start = System.nanoTime();
+        long budgetNanos = ModConfig.getDeliveryBudgetMicros() * 1000L;
+        int maxWrites = ModConfig.getDeliveryMaxPerTick();
+        int writes = 0;
+
+        while (writes < maxWrites) {
+            MutableText merged = null;
+            int mergedCount = 0;
+            long now = System.nanoTime();
+
+            // 同时到达的多条翻译合并成一次写入
+            PendingMessage head;
+            while (mergedCount < MAX_MERGED_MESSAGES && (head = pollDue(now)) != null) {
+                if (head.token.isCancelled()) {
+                    continue;
+                }
+                if (merged == null) {
+                    merged = head.message.copy();
+                } else {
+                    merged.append(Text.literal("\n")).append(head.message);
+                }
+                mergedCount++;
+            }
+
+            if (merged == null) {
+                break;
+            }
+
+            client.inGameHud.getChatHud().addMessage(merged);
+            writes++;
+            delivered += mergedCount;
+
+            if (System.nanoTime() - start >= budgetNanos) {
+                break;
+            }
+        }
+
+        if (writes > 0 && event.shouldCommit()) {
+            event.messageCount = delivered;
+            event.writeCount = writes;
+            event.remaining = size();
+            event.commit();
+        }
+    }
+}
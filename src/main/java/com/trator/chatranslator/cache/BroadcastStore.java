@@ -0,0 +1,284 @@
+package com.trator.chatranslator.cache;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.trator.chatranslator.ChatTranslatorMod;
+import com.trator.chatranslator.config.ModConfig;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 按服务器保存的重复公告
+ * 服务器的自动公告、欢迎语和插件提示每隔几分钟重复一次。按出现次数和间隔的稳定程度识别这类消息，
+ * 把它们的翻译固定保存下来，不受翻译缓存淘汰的影响；进入服务器时读取并在空闲时补齐缺少的翻译，
+ * 之后这些消息直接显示译文，不再和玩家聊天争抢API调用次数
+ */
+public class BroadcastStore {
+    private static final Gson GSON = new Gson();
+    private static final Type MAP_TYPE = new TypeToken<LinkedHashMap<String, Broadcast>>() {}.getType();
+
+    // 最多跟踪的尚未确定的消息数
+    private static final int MAX_TRACKED = 512;
+    // 最多固定的公告数，超出时淘汰最久没出现的
+    private static final int MAX_PINNED = 500;
+    // 间隔短于此值的重复（刷屏）不计入
+    private static final long MIN_INTERVAL_MS = 10_000;
+    // 间隔稳定时出现这么多次即固定
+    private static final int PERIODIC_COUNT = 3;
+    // 间隔不稳定时需要出现的次数
+    private static final int FREQUENT_COUNT = 5;
+    // 间隔的平均偏差不超过平均间隔的此比例时认为是定时发送
+    private static final double PERIODIC_TOLERANCE = 0.25;
+
+    private static class Broadcast {
+        long lastSeen;
+        long interval;
+        Map<String, String> translations = new HashMap<>();
+    }
+
+    private static class Observation {
+        int count;
+        long lastSeen;
+        double meanInterval;
+        double meanDeviation;
+    }
+
+    private static final Map<String, Broadcast> PINNED = new LinkedHashMap<>();
+    private static final Map<String, Observation> TRACKED = new LinkedHashMap<>(64, 0.75f, true);
+    // 正在补齐翻译的公告
+    private static final Set<String> REQUESTED = new HashSet<>();
+    // 已确认全部有译文的目标语言，有新公告或重新读取时清除
+    private static String completeLanguage;
+
+    private static String loadedServerId;
+
+    /**
+     * 记录一条非玩家消息出现了一次
+     * @param now 出现的时间（毫秒），离线回放时为虚拟时间
+     * @return 这条消息是否是固定的公告
+     */
+    public static boolean observe(String text, String targetLanguage, long now) {
+        synchronized (PINNED) {
+            if (loadedServerId == null) {
+                return false;
+            }
+            Broadcast pinned = PINNED.get(text);
+            if (pinned != null) {
+                pinned.lastSeen = now;
+                return true;
+            }
+
+            Observation observation = TRACKED.get(text);
+            if (observation == null) {
+                observation = new Observation();
+                observation.count = 1;
+                observation.lastSeen = now;
+                TRACKED.put(text, observation);
+                if (TRACKED.size() > MAX_TRACKED) {
+                    Iterator<String> eldest = TRACKED.keySet().iterator();
+                    eldest.next();
+                    eldest.remove();
+                }
+                return false;
+            }
+
+            long interval = now - observation.lastSeen;
+            if (interval < MIN_INTERVAL_MS) {
+                return false;
+            }
+            observation.lastSeen = now;
+            observation.count++;
+            if (observation.count == 2) {
+                observation.meanInterval = interval;
+            } else {
+                observation.meanDeviation += (Math.abs(interval - observation.meanInterval) - observation.meanDeviation) / (observation.count - 2);
+                observation.meanInterval += (interval - observation.meanInterval) / (observation.count - 1);
+            }
+
+            boolean periodic = observation.count >= PERIODIC_COUNT
+                    && observation.meanDeviation <= observation.meanInterval * PERIODIC_TOLERANCE;
+            if (!periodic && observation.count < FREQUENT_COUNT) {
+                return false;
+            }
+
+            TRACKED.remove(text);
+            Broadcast broadcast = new Broadcast();
+            broadcast.lastSeen = now;
+            broadcast.interval = (long) observation.meanInterval;
+            // 之前出现时已经翻译过的直接沿用
+            String cached = TranslationCache.get(text, targetLanguage);
+            if (cached != null) {
+                broadcast.translations.put(targetLanguage, cached);
+            }
+            PINNED.put(text, broadcast);
+            completeLanguage = null;
+            ChatTranslatorMod.LOGGER.info("检测到重复公告（间隔约{}秒），已固定翻译", broadcast.interval / 1000);
+            return true;
+        }
+    }
+
+    /**
+     * @return 固定公告的译文，不是固定公告或还没有译文时返回 null
+     */
+    public static String getTranslation(String text, String targetLanguage) {
+        synchronized (PINNED) {
+            Broadcast broadcast = PINNED.get(text);
+            return broadcast == null ? null : broadcast.translations.get(targetLanguage);
+        }
+    }
+
+    /**
+     * 保存翻译结果，只对固定的公告生效
+     */
+    public static void complete(String text, String targetLanguage, String translated) {
+        synchronized (PINNED) {
+            REQUESTED.remove(text);
+            Broadcast broadcast = PINNED.get(text);
+            if (broadcast != null && translated != null) {
+                broadcast.translations.put(targetLanguage, translated);
+            }
+        }
+    }
+
+    /**
+     * 取出一条还没有目标语言译文的固定公告，用于空闲时补齐，没有时返回 null
+     */
+    public static String pollMissing(String targetLanguage) {
+        synchronized (PINNED) {
+            if (loadedServerId == null || targetLanguage.equals(completeLanguage)) {
+                return null;
+            }
+            boolean waiting = false;
+            for (Map.Entry<String, Broadcast> entry : PINNED.entrySet()) {
+                if (entry.getValue().translations.containsKey(targetLanguage)) {
+                    continue;
+                }
+                if (REQUESTED.add(entry.getKey())) {
+                    return entry.getKey();
+                }
+                waiting = true;
+            }
+            // 还有正在翻译的公告时，失败后需要重新取出
+            if (!waiting) {
+                completeLanguage = targetLanguage;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * 补齐翻译失败时调用，之后会重新取出
+     */
+    public static void fail(String text) {
+        synchronized (PINNED) {
+            REQUESTED.remove(text);
+        }
+    }
+
+    public static int size() {
+        synchronized (PINNED) {
+            return PINNED.size();
+        }
+    }
+
+    /**
+     * 读取指定服务器的固定公告，替换当前内存中的内容
+     */
+    public static void load(String serverId) {
+        File file = getStoreFile(serverId);
+        Map<String, Broadcast> loaded = null;
+        if (file.exists()) {
+            try (FileReader reader = new FileReader(file, StandardCharsets.UTF_8)) {
+                loaded = GSON.fromJson(reader, MAP_TYPE);
+            } catch (Exception e) {
+                ChatTranslatorMod.LOGGER.error("failed to load pinned broadcasts", e);
+            }
+        }
+
+        synchronized (PINNED) {
+            PINNED.clear();
+            TRACKED.clear();
+            REQUESTED.clear();
+            completeLanguage = null;
+            if (loaded != null) {
+                for (Map.Entry<String, Broadcast> entry : loaded.entrySet()) {
+                    Broadcast broadcast = entry.getValue();
+                    if (broadcast == null) {
+                        continue;
+                    }
+                    if (broadcast.translations == null) {
+                        broadcast.translations = new HashMap<>();
+                    }
+                    PINNED.put(entry.getKey(), broadcast);
+                }
+            }
+            loadedServerId = serverId;
+        }
+    }
+
+    /**
+     * 把当前固定的公告写回所属服务器的文件，超出上限时淘汰最久没出现的
+     */
+    public static void save() {
+        String serverId;
+        String json;
+        synchronized (PINNED) {
+            serverId = loadedServerId;
+            if (PINNED.size() > MAX_PINNED) {
+                List<Map.Entry<String, Broadcast>> entries = new ArrayList<>(PINNED.entrySet());
+                entries.sort((a, b) -> Long.compare(b.getValue().lastSeen, a.getValue().lastSeen));
+                PINNED.clear();
+                for (Map.Entry<String, Broadcast> entry : entries.subList(0, MAX_PINNED)) {
+                    PINNED.put(entry.getKey(), entry.getValue());
+                }
+            }
+            json = GSON.toJson(PINNED, MAP_TYPE);
+        }
+        if (serverId == null) {
+            return;
+        }
+
+        File file = getStoreFile(serverId);
+        try {
+            file.getParentFile().mkdirs();
+            try (FileWriter writer = new FileWriter(file, StandardCharsets.UTF_8)) {
+                writer.write(json);
+            }
+        } catch (IOException e) {
+            ChatTranslatorMod.LOGGER.error("failed to save pinned broadcasts", e);
+        }
+    }
+
+    /**
+     * 写回磁盘并清空内存中的内容，离开服务器时调用
+     */
+    public static void unload() {
+        save();
+        synchronized (PINNED) {
+            PINNED.clear();
+            TRACKED.clear();
+            REQUESTED.clear();
+            completeLanguage = null;
+            loadedServerId = null;
+        }
+    }
+
+    private static File getStoreFile(String serverId) {
+        return ModConfig.getConfigDir()
+                .resolve("chatranslator").resolve("broadcasts")
+                .resolve(TranslationCache.getFileSafeServerId(serverId) + ".json").toFile();
+    }
+}
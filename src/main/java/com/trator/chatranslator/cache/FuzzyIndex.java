@@ -0,0 +1,137 @@
+package com.trator.chatranslator.cache;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 只在写法上不同的重复文本的查找索引
+ * 原文先规范化（大小写、标点和空白），再把连续相同的字母合并成一个作为索引键；
+ * 键相同的候选还要逐段比较字母的重复次数：次数相同，或其中一方连续出现三次及以上（拉长的写法）才算相同。
+ * "hellooo"、"Hello!!" 和 "hello" 共用一条翻译；"base" 和 "bass"、"good" 和 "god"、
+ * "不去" 和 "要去" 这类改动了字母或汉字的文本不会命中。
+ * 读取不加锁，写入由 TranslationCache 在持有缓存锁时进行
+ */
+class FuzzyIndex {
+    // 连续出现这么多次及以上的字母视为拉长，"good"、"too" 中的双写字母保持不变
+    private static final int STRETCH_RUN = 3;
+
+    // 目标语言 + '\0' + 合并重复字母后的文本 -> 原文
+    private final Map<String, Set<String>> originals = new ConcurrentHashMap<>();
+
+    /**
+     * 规范化文本：转小写，去掉标点，合并空白；字母和数字保持不变
+     * 例如 "Hello, World!!" 变成 "hello world"
+     */
+    static String canonicalize(String text) {
+        StringBuilder builder = new StringBuilder(text.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < text.length(); ) {
+            int codePoint = text.codePointAt(i);
+            i += Character.charCount(codePoint);
+            if (Character.isWhitespace(codePoint)) {
+                pendingSpace = true;
+                continue;
+            }
+            if (!Character.isLetterOrDigit(codePoint)) {
+                continue;
+            }
+            if (pendingSpace && builder.length() > 0) {
+                builder.append(' ');
+            }
+            pendingSpace = false;
+            builder.appendCodePoint(Character.toLowerCase(codePoint));
+        }
+        return builder.toString();
+    }
+
+    // 连续相同的字母只保留一个，数字不合并（"100" 和 "10" 意思不同）
+    private static String skeleton(String canonical) {
+        StringBuilder builder = new StringBuilder(canonical.length());
+        int last = -1;
+        for (int i = 0; i < canonical.length(); ) {
+            int codePoint = canonical.codePointAt(i);
+            i += Character.charCount(codePoint);
+            if (codePoint != last || Character.isDigit(codePoint)) {
+                builder.appendCodePoint(codePoint);
+            }
+            last = codePoint;
+        }
+        return builder.toString();
+    }
+
+    void add(String targetLanguage, String text) {
+        String canonical = canonicalize(text);
+        if (canonical.isEmpty()) {
+            return;
+        }
+        originals.computeIfAbsent(key(targetLanguage, canonical), k -> ConcurrentHashMap.newKeySet()).add(text);
+    }
+
+    void remove(String targetLanguage, String text) {
+        String canonical = canonicalize(text);
+        if (canonical.isEmpty()) {
+            return;
+        }
+        originals.computeIfPresent(key(targetLanguage, canonical), (k, texts) -> {
+            texts.remove(text);
+            return texts.isEmpty() ? null : texts;
+        });
+    }
+
+    void clear() {
+        originals.clear();
+    }
+
+    /**
+     * @return 已索引的、只在大小写、标点或拉长的字母上不同的原文，没有时返回 null
+     */
+    String find(String targetLanguage, String text) {
+        String canonical = canonicalize(text);
+        if (canonical.isEmpty()) {
+            return null;
+        }
+        Set<String> texts = originals.get(key(targetLanguage, canonical));
+        if (texts == null) {
+            return null;
+        }
+        for (String candidate : texts) {
+            if (sameRuns(canonical, canonicalize(candidate))) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    private static String key(String targetLanguage, String canonical) {
+        return targetLanguage + '\0' + skeleton(canonical);
+    }
+
+    // 两段文本的字符序列相同（索引键已保证），逐段比较重复次数
+    static boolean sameRuns(String a, String b) {
+        int i = 0;
+        int j = 0;
+        while (i < a.length() && j < b.length()) {
+            int codePoint = a.codePointAt(i);
+            if (codePoint != b.codePointAt(j)) {
+                return false;
+            }
+            int width = Character.charCount(codePoint);
+            int runA = 0;
+            while (i < a.length() && a.codePointAt(i) == codePoint) {
+                i += width;
+                runA++;
+            }
+            int runB = 0;
+            while (j < b.length() && b.codePointAt(j) == codePoint) {
+                j += width;
+                runB++;
+            }
+            // "god" 和 "good" 不同；"hellooo" 和 "hello"、"goooood" 和 "good" 相同
+            if (runA != runB && (Character.isDigit(codePoint) || Math.max(runA, runB) < STRETCH_RUN)) {
+                return false;
+            }
+        }
+        return i == a.length() && j == b.length();
+    }
+}
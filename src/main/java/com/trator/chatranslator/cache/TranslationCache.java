@@ -0,0 +1,182 @@
+package com.trator.chatranslator.cache;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.trator.chatranslator.ChatTranslatorMod;
+import com.trator.chatranslator.config.ModConfig;
+import com.trator.chatranslator.diagnostics.DiagnosticLog;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 按服务器保存的翻译缓存
+ * 进入服务器时在后台读取该服务器的缓存，离开时写回磁盘，同一句话不会重复调用API；
+ * 精确匹配不到时再查近似索引，"hellooo"、"Hello!!" 这类只在写法上不同的文本可以共用同一条翻译（关闭近似匹配时不查）
+ */
+public class TranslationCache {
+    private static final Gson GSON = new Gson();
+    private static final Type MAP_TYPE = new TypeToken<LinkedHashMap<String, String>>() {}.getType();
+    private static final int MAX_ENTRIES = 5000;
+
+    // 与 CACHE 同步维护的近似索引，在 CACHE 的锁内写入，查找不需要加锁
+    private static final FuzzyIndex FUZZY = new FuzzyIndex();
+
+    // 按访问顺序排列的LRU缓存，键为 目标语言 + '\0' + 原文
+    private static final Map<String, String> CACHE = new LinkedHashMap<String, String>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            if (size() <= MAX_ENTRIES) {
+                return false;
+            }
+            String key = eldest.getKey();
+            int separator = key.indexOf('\0');
+            FUZZY.remove(key.substring(0, separator), key.substring(separator + 1));
+            return true;
+        }
+    };
+
+    private static String loadedServerId;
+
+    /**
+     * @return 缓存的翻译，没有时返回 null
+     */
+    public static String get(String text, String targetLanguage) {
+        synchronized (CACHE) {
+            String translated = CACHE.get(key(text, targetLanguage));
+            if (translated != null || !ModConfig.isFuzzyCache()) {
+                return translated;
+            }
+        }
+        // 在锁外查找近似索引，只在找到时再取一次锁
+        String similar = FUZZY.find(targetLanguage, text);
+        if (similar == null) {
+            return null;
+        }
+        synchronized (CACHE) {
+            String translated = CACHE.get(key(similar, targetLanguage));
+            if (translated != null) {
+                DiagnosticLog.count("fuzzyHit");
+            }
+            return translated;
+        }
+    }
+
+    /**
+     * 只在原文完全相同时命中，不查近似索引；以玩家名义发出的译文只能使用这种结果
+     * @return 缓存的翻译，没有时返回 null
+     */
+    public static String getExact(String text, String targetLanguage) {
+        synchronized (CACHE) {
+            return CACHE.get(key(text, targetLanguage));
+        }
+    }
+
+    public static boolean contains(String text, String targetLanguage) {
+        return get(text, targetLanguage) != null;
+    }
+
+    public static void put(String text, String targetLanguage, String translated) {
+        synchronized (CACHE) {
+            CACHE.put(key(text, targetLanguage), translated);
+            FUZZY.add(targetLanguage, text);
+        }
+    }
+
+    public static int size() {
+        synchronized (CACHE) {
+            return CACHE.size();
+        }
+    }
+
+    /**
+     * 读取指定服务器的缓存，替换当前内存中的内容
+     */
+    public static void load(String serverId) {
+        File file = getCacheFile(serverId);
+        Map<String, String> loaded = null;
+        if (file.exists()) {
+            try (FileReader reader = new FileReader(file, StandardCharsets.UTF_8)) {
+                loaded = GSON.fromJson(reader, MAP_TYPE);
+            } catch (Exception e) {
+                ChatTranslatorMod.LOGGER.error("failed to load translation cache", e);
+            }
+        }
+
+        synchronized (CACHE) {
+            CACHE.clear();
+            FUZZY.clear();
+            if (loaded != null) {
+                CACHE.putAll(loaded);
+                for (String key : CACHE.keySet()) {
+                    int separator = key.indexOf('\0');
+                    if (separator >= 0) {
+                        FUZZY.add(key.substring(0, separator), key.substring(separator + 1));
+                    }
+                }
+            }
+            loadedServerId = serverId;
+        }
+        ChatTranslatorMod.LOGGER.info("translation cache loaded: {} entries", size());
+    }
+
+    /**
+     * 把当前缓存写回所属服务器的文件
+     */
+    public static void save() {
+        String serverId;
+        Map<String, String> snapshot;
+        synchronized (CACHE) {
+            serverId = loadedServerId;
+            snapshot = new LinkedHashMap<>(CACHE);
+        }
+        if (serverId == null) {
+            return;
+        }
+
+        File file = getCacheFile(serverId);
+        try {
+            file.getParentFile().mkdirs();
+            try (FileWriter writer = new FileWriter(file, StandardCharsets.UTF_8)) {
+                GSON.toJson(snapshot, MAP_TYPE, writer);
+            }
+        } catch (IOException e) {
+            ChatTranslatorMod.LOGGER.error("failed to save translation cache", e);
+        }
+    }
+
+    /**
+     * 写回磁盘并清空内存中的缓存，离开服务器时调用
+     */
+    public static void unload() {
+        save();
+        synchronized (CACHE) {
+            CACHE.clear();
+            FUZZY.clear();
+            loadedServerId = null;
+        }
+    }
+
+    /**
+     * @return 可以作为文件名使用的服务器标识
+     */
+    public static String getFileSafeServerId(String id) {
+        return id.toLowerCase().replaceAll("[^a-z0-9._-]", "_");
+    }
+
+    private static String key(String text, String targetLanguage) {
+        return targetLanguage + '\0' + text;
+    }
+
+    private static File getCacheFile(String serverId) {
+        return ModConfig.getConfigDir()
+                .resolve("chatranslator").resolve("cache")
+                .resolve(getFileSafeServerId(serverId) + ".json").toFile();
+    }
+}
@@ -0,0 +1,377 @@
+package com.trator.chatranslator.cache;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.trator.chatranslator.ChatTranslatorMod;
+import com.trator.chatranslator.config.ModConfig;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按服务器保存的翻译预写日志
+ * 消息进入翻译队列时追加一行“待翻译”，拿到译文时追加一行“已完成”，放弃时追加一行“已丢弃”。
+ * 断开连接、崩溃或重启后重新进入同一服务器时，已完成的译文写回翻译缓存，
+ * 不太旧的待翻译消息重新排队，过期的记录在整理时删除，断开前已经花掉的API调用次数不会再花一次
+ * 文件由单独的写入线程追加，记录在排队的写入都完成后一起写出
+ */
+public class TranslationJournal {
+    private static final Gson GSON = new Gson();
+
+    private static final String PENDING = "P";
+    private static final String DONE = "D";
+    private static final String DROPPED = "X";
+
+    // 待翻译消息超过此时间（毫秒）后重新进入服务器时不再翻译
+    private static final long PENDING_TTL_MS = 5 * 60_000;
+    // 已完成的译文在日志中保留的时间（毫秒），之后只靠翻译缓存
+    private static final long DONE_TTL_MS = 60 * 60_000;
+    // 最多保留的记录数，超出时丢弃最早的
+    private static final int MAX_ENTRIES = 1000;
+    // 追加的行数超过有效记录数的这个倍数时重写文件
+    private static final int COMPACT_FACTOR = 4;
+
+    // 日志中的一行
+    private static class Record {
+        String t;
+        String c;
+        String l;
+        String s;
+        String r;
+        long at;
+    }
+
+    /**
+     * 重新进入服务器后需要继续翻译的消息
+     */
+    public static class PendingEntry {
+        public final String content;
+        public final String sender;
+
+        PendingEntry(String content, String sender) {
+            this.content = content;
+            this.sender = sender;
+        }
+    }
+
+    // 目标语言 + '\0' + 原文 -> 最后一条有效记录，由 ENTRIES 的锁保护
+    private static final Map<String, Record> ENTRIES = new LinkedHashMap<>();
+    private static int appended;
+    private static String loadedServerId;
+
+    // 文件读写都交给同一个后台线程按顺序执行，调用方（包括持有翻译队列锁的丢弃回调）只更新内存状态
+    private static final BlockingQueue<Runnable> WRITES = new LinkedBlockingQueue<>();
+    private static final ExecutorService WRITER = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, WRITES, runnable -> {
+        Thread thread = new Thread(runnable, "chatranslator-journal");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // 以下两个字段只在写入线程中访问
+    private static BufferedWriter writer;
+    private static String writerServerId;
+
+    static {
+        // 退出游戏时写完还在排队的记录
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            WRITER.shutdown();
+            try {
+                WRITER.awaitTermination(2, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+    }
+
+    /**
+     * 消息进入翻译队列时调用
+     */
+    public static void pending(String content, String sender, String targetLanguage) {
+        synchronized (ENTRIES) {
+            Record last = ENTRIES.get(key(content, targetLanguage));
+            // 重新排队（频率限制、继续翻译）不重复记录
+            if (last != null && PENDING.equals(last.t)) {
+                return;
+            }
+            Record record = record(PENDING, content, targetLanguage);
+            record.s = sender;
+            append(record);
+        }
+    }
+
+    /**
+     * 拿到译文时调用
+     */
+    public static void complete(String content, String targetLanguage, String translated) {
+        synchronized (ENTRIES) {
+            Record record = record(DONE, content, targetLanguage);
+            record.r = translated;
+            append(record);
+        }
+    }
+
+    /**
+     * 消息被跳过、丢弃或翻译失败时调用，之后不再继续翻译
+     */
+    public static void discard(String content, String targetLanguage) {
+        synchronized (ENTRIES) {
+            Record last = ENTRIES.get(key(content, targetLanguage));
+            if (last != null && PENDING.equals(last.t)) {
+                append(record(DROPPED, content, targetLanguage));
+            }
+        }
+    }
+
+    /**
+     * 丢弃所有待翻译记录，关闭翻译、修改目标语言等主动取消时调用
+     */
+    public static void discardPending() {
+        synchronized (ENTRIES) {
+            List<Record> pending = new ArrayList<>();
+            for (Record record : ENTRIES.values()) {
+                if (PENDING.equals(record.t)) {
+                    pending.add(record);
+                }
+            }
+            for (Record record : pending) {
+                append(record(DROPPED, record.c, record.l));
+            }
+        }
+    }
+
+    /**
+     * 读取指定服务器的日志：已完成的译文写回翻译缓存，删除过期记录后重写文件
+     * @return 还需要翻译成目标语言的消息，按进入队列的先后排列
+     */
+    public static List<PendingEntry> load(String serverId, String targetLanguage) {
+        // 排在之前的写入之后读取，上次离开时还没写完的记录也能读到
+        List<Record> records;
+        try {
+            records = WRITER.submit(() -> read(serverId)).get();
+        } catch (Exception e) {
+            ChatTranslatorMod.LOGGER.error("failed to load translation journal", e);
+            records = new ArrayList<>();
+        }
+
+        List<PendingEntry> resumed = new ArrayList<>();
+        synchronized (ENTRIES) {
+            ENTRIES.clear();
+            loadedServerId = serverId;
+            for (Record record : records) {
+                apply(record);
+            }
+
+            prune(System.currentTimeMillis());
+            for (Record record : ENTRIES.values()) {
+                if (!record.l.equals(targetLanguage)) {
+                    continue;
+                }
+                if (DONE.equals(record.t)) {
+                    TranslationCache.put(record.c, record.l, record.r);
+                } else if (PENDING.equals(record.t)) {
+                    resumed.add(new PendingEntry(record.c, record.s));
+                }
+            }
+            compact();
+        }
+        if (!resumed.isEmpty()) {
+            ChatTranslatorMod.LOGGER.info("继续翻译上次离开服务器时未完成的{}条消息", resumed.size());
+        }
+        return resumed;
+    }
+
+    /**
+     * 删除过期记录后重写文件并关闭，离开服务器时调用
+     */
+    public static void unload() {
+        synchronized (ENTRIES) {
+            if (loadedServerId != null) {
+                prune(System.currentTimeMillis());
+                compact();
+            }
+            write(TranslationJournal::closeWriter);
+            ENTRIES.clear();
+            loadedServerId = null;
+        }
+    }
+
+    private static Record record(String type, String content, String targetLanguage) {
+        Record record = new Record();
+        record.t = type;
+        record.c = content;
+        record.l = targetLanguage;
+        record.at = System.currentTimeMillis();
+        return record;
+    }
+
+    private static Record parse(String line) {
+        try {
+            Record record = GSON.fromJson(line, Record.class);
+            if (record == null || record.t == null || record.c == null || record.l == null
+                    || (DONE.equals(record.t) && record.r == null)) {
+                return null;
+            }
+            return record;
+        } catch (JsonParseException e) {
+            return null;
+        }
+    }
+
+    // 更新内存中的状态，已丢弃的记录直接删除
+    private static void apply(Record record) {
+        String key = key(record.c, record.l);
+        ENTRIES.remove(key);
+        if (!DROPPED.equals(record.t)) {
+            ENTRIES.put(key, record);
+        }
+        if (ENTRIES.size() > MAX_ENTRIES) {
+            Iterator<String> eldest = ENTRIES.keySet().iterator();
+            eldest.next();
+            eldest.remove();
+        }
+    }
+
+    // 更新内存状态后把这一行交给写入线程
+    private static void append(Record record) {
+        if (loadedServerId == null) {
+            return;
+        }
+        apply(record);
+        String serverId = loadedServerId;
+        String line = GSON.toJson(record);
+        write(() -> writeLine(serverId, line));
+        if (++appended > Math.max(MAX_ENTRIES, ENTRIES.size() * COMPACT_FACTOR)) {
+            compact();
+        }
+    }
+
+    private static void prune(long now) {
+        ENTRIES.values().removeIf(record -> now - record.at > (PENDING.equals(record.t) ? PENDING_TTL_MS : DONE_TTL_MS));
+    }
+
+    // 取当前有效记录的快照，由写入线程替换原文件
+    private static void compact() {
+        appended = 0;
+        String serverId = loadedServerId;
+        List<String> lines = new ArrayList<>(ENTRIES.size());
+        for (Record record : ENTRIES.values()) {
+            lines.add(GSON.toJson(record));
+        }
+        write(() -> rewrite(serverId, lines));
+    }
+
+    private static void write(Runnable task) {
+        try {
+            WRITER.execute(task);
+        } catch (RejectedExecutionException e) {
+            // 游戏正在退出，写入线程已经停止
+        }
+    }
+
+    // 以下方法只在写入线程中执行
+
+    private static List<Record> read(String serverId) {
+        closeWriter();
+        List<Record> records = new ArrayList<>();
+        File file = getJournalFile(serverId);
+        if (!file.exists()) {
+            return records;
+        }
+        // 逐行读取，崩溃时写了一半的最后一行直接忽略
+        try (BufferedReader reader = new BufferedReader(new FileReader(file, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Record record = parse(line);
+                if (record != null) {
+                    records.add(record);
+                }
+            }
+        } catch (IOException e) {
+            ChatTranslatorMod.LOGGER.error("failed to load translation journal", e);
+        }
+        return records;
+    }
+
+    // 追加一行，排队的记录都写完后才写出，连续的多条记录只写出一次
+    private static void writeLine(String serverId, String line) {
+        try {
+            if (writer == null || !serverId.equals(writerServerId)) {
+                closeWriter();
+                File file = getJournalFile(serverId);
+                file.getParentFile().mkdirs();
+                writer = new BufferedWriter(new FileWriter(file, StandardCharsets.UTF_8, true));
+                writerServerId = serverId;
+            }
+            writer.write(line);
+            writer.newLine();
+            if (WRITES.isEmpty()) {
+                writer.flush();
+            }
+        } catch (IOException e) {
+            ChatTranslatorMod.LOGGER.error("failed to append to translation journal", e);
+            closeWriter();
+        }
+    }
+
+    // 只写入有效记录替换原文件
+    private static void rewrite(String serverId, List<String> lines) {
+        closeWriter();
+        File file = getJournalFile(serverId);
+        if (lines.isEmpty()) {
+            file.delete();
+            return;
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        try {
+            file.getParentFile().mkdirs();
+            try (BufferedWriter out = new BufferedWriter(new FileWriter(temp, StandardCharsets.UTF_8))) {
+                for (String line : lines) {
+                    out.write(line);
+                    out.newLine();
+                }
+            }
+            if (!temp.renameTo(file) && (!file.delete() || !temp.renameTo(file))) {
+                throw new IOException("could not replace " + file);
+            }
+        } catch (IOException e) {
+            ChatTranslatorMod.LOGGER.error("failed to compact translation journal", e);
+        }
+    }
+
+    private static void closeWriter() {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                ChatTranslatorMod.LOGGER.error("failed to close translation journal", e);
+            }
+            writer = null;
+            writerServerId = null;
+        }
+    }
+
+    private static String key(String content, String targetLanguage) {
+        return targetLanguage + '\0' + content;
+    }
+
+    private static File getJournalFile(String serverId) {
+        return ModConfig.getConfigDir()
+                .resolve("chatranslator").resolve("journal")
+                .resolve(TranslationCache.getFileSafeServerId(serverId) + ".log").toFile();
+    }
+}
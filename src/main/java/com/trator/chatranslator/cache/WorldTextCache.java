@@ -0,0 +1,183 @@
+package com.trator.chatranslator.cache;
+
+import com.trator.chatranslator.MessageClassifier;
+import com.trator.chatranslator.config.ModConfig;
+import net.minecraft.text.MutableText;
+import net.minecraft.text.PlainTextContent;
+import net.minecraft.text.StringVisitable;
+import net.minecraft.text.Text;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * 告示牌、书和物品说明等世界文本的翻译缓存
+ * 渲染线程只做无锁的查表，未命中的文本放进待翻译队列，由翻译队列在聊天消息空闲时以低优先级处理；
+ * 每有新的翻译完成，代数加一，告示牌和书检测到代数变化后重新生成一次文字。
+ * 文本按结构逐段翻译，每段字面文字换成译文，样式和子文本的格式保持不变。
+ * 告示牌和书的 Text 对象是固定的，查找结果按对象本身缓存，命中时不创建任何对象；
+ * 物品说明每帧重新生成，不按对象缓存
+ */
+public class WorldTextCache {
+    private static final int MAX_ENTRIES = 2000;
+    private static final int MAX_PENDING = 256;
+    // 物品 ID 这类标识符（高级提示框中的 "minecraft:diamond_sword"）不需要翻译
+    private static final Pattern IDENTIFIER = Pattern.compile("[a-z0-9_.-]+:[a-z0-9_./-]+");
+    // 检查文本各段的结果，多段时取最大的
+    private static final int UNCHANGED = 0;
+    private static final int READY = 1;
+    private static final int MISSING = 2;
+
+    private static final Map<String, String> TRANSLATIONS = new ConcurrentHashMap<>();
+    // 已经排队或正在翻译的文本，避免每帧重复排队
+    private static final Set<String> REQUESTED = ConcurrentHashMap.newKeySet();
+    private static final Queue<String> PENDING = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger GENERATION = new AtomicInteger();
+    // 原来的 Text 对象 -> 显示用的 Text（没有译文时是原来的对象），只在渲染线程上访问，代数变化时清空
+    private static final Map<Text, Text> RESOLVED = new IdentityHashMap<>();
+    private static int resolvedGeneration;
+
+    /**
+     * @return 当前代数，翻译结果或开关变化时改变
+     */
+    public static int generation() {
+        return GENERATION.get();
+    }
+
+    /**
+     * 在渲染线程上查找告示牌、书页这类固定对象的翻译，未命中时排队并返回原文
+     */
+    public static Text lookup(Text text) {
+        if (text == null || !ModConfig.isWorldTextTranslation()) {
+            return text;
+        }
+        int generation = GENERATION.get();
+        if (generation != resolvedGeneration || RESOLVED.size() >= MAX_ENTRIES) {
+            RESOLVED.clear();
+            resolvedGeneration = generation;
+        }
+        Text resolved = RESOLVED.get(text);
+        if (resolved == null) {
+            resolved = translateLine(text);
+            RESOLVED.put(text, resolved);
+        }
+        return resolved;
+    }
+
+    /**
+     * 查找每次都重新生成的文本（物品说明）的翻译，不按对象缓存，可以在任意线程调用
+     * @return 所有字面文字都有译文时返回重建的文本，否则排队并返回原文
+     */
+    public static Text translateLine(Text text) {
+        if (text == null) {
+            return null;
+        }
+        // 先只检查不创建对象，大部分行（游戏自带的本地化文本、还没有译文的文本）到这里就返回
+        return scan(text) == READY ? rebuild(text) : text;
+    }
+
+    // 检查每段字面文字是否都有译文，缺少的全部排上队
+    private static int scan(Text text) {
+        int state = UNCHANGED;
+        if (text.getContent() instanceof PlainTextContent plain && needsTranslation(plain.string())) {
+            String translated = TRANSLATIONS.get(plain.string());
+            if (translated == null) {
+                request(plain.string());
+                state = MISSING;
+            } else if (!translated.equals(plain.string())) {
+                state = READY;
+            }
+        }
+        List<Text> siblings = text.getSiblings();
+        for (int i = 0; i < siblings.size(); i++) {
+            state = Math.max(state, scan(siblings.get(i)));
+        }
+        return state;
+    }
+
+    // 按原来的结构重建文本：字面文字换成译文，可翻译文本（游戏自带，已经本地化）和每一段的样式原样保留
+    private static Text rebuild(Text text) {
+        MutableText copy;
+        String translated = text.getContent() instanceof PlainTextContent plain && needsTranslation(plain.string())
+                ? TRANSLATIONS.get(plain.string()) : null;
+        copy = translated != null ? Text.literal(translated) : MutableText.of(text.getContent());
+        copy.setStyle(text.getStyle());
+        for (Text sibling : text.getSiblings()) {
+            copy.append(rebuild(sibling));
+        }
+        return copy;
+    }
+
+    // 空白、标识符和没有字母的片段（数字、符号）保持原样
+    private static boolean needsTranslation(String content) {
+        return !content.isBlank() && !IDENTIFIER.matcher(content).matches()
+                && content.codePoints().anyMatch(Character::isLetter);
+    }
+
+    /**
+     * 书页在 1.21.1 中以 StringVisitable 给出，只处理其中的 Text
+     */
+    public static StringVisitable lookup(StringVisitable page) {
+        return page instanceof Text ? lookup((Text) page) : page;
+    }
+
+    /**
+     * 取出一条等待翻译的世界文本，没有时返回 null
+     */
+    public static String pollPending() {
+        return PENDING.poll();
+    }
+
+    public static boolean hasPending() {
+        return !PENDING.isEmpty();
+    }
+
+    /**
+     * 翻译完成后调用，失败时允许之后重新排队
+     */
+    public static void complete(String content, String translated, boolean success) {
+        if (success) {
+            if (TRANSLATIONS.size() >= MAX_ENTRIES) {
+                TRANSLATIONS.clear();
+            }
+            TRANSLATIONS.put(content, translated);
+            GENERATION.incrementAndGet();
+        }
+        REQUESTED.remove(content);
+    }
+
+    /**
+     * 清空所有内容，离开服务器或关闭世界文本翻译时调用
+     */
+    public static void clear() {
+        PENDING.clear();
+        REQUESTED.clear();
+        TRANSLATIONS.clear();
+        GENERATION.incrementAndGet();
+    }
+
+    private static void request(String content) {
+        // 已排队、正在翻译或已判断为不需要翻译的文本直接返回，每帧只做一次集合查找
+        if (!REQUESTED.add(content)) {
+            return;
+        }
+        if (PENDING.size() >= MAX_PENDING) {
+            REQUESTED.remove(content);
+            return;
+        }
+        // 中文内容不需要翻译，记为译文与原文相同，同一行的其他片段照常替换
+        if (MessageClassifier.shouldSkipTranslation(content)) {
+            TRANSLATIONS.put(content, content);
+            REQUESTED.remove(content);
+        } else {
+            PENDING.add(content);
+        }
+    }
+}
@@ -5,13 +5,27 @@ import com.mojang.brigadier.arguments.BoolArgumentType;
 import com.mojang.brigadier.arguments.IntegerArgumentType;
 import com.mojang.brigadier.arguments.StringArgumentType;
 import com.mojang.brigadier.builder.LiteralArgumentBuilder;
+import com.trator.chatranslator.ChatLineAnnotator;
+import com.trator.chatranslator.ChatMessageListener;
 import com.trator.chatranslator.ChatTranslatorMod;
+import com.trator.chatranslator.LazyTranslation;
+import com.trator.chatranslator.OutgoingTranslator;
+import com.trator.chatranslator.ServerContext;
+import com.trator.chatranslator.ServerTranslationClient;
+import com.trator.chatranslator.cache.BroadcastStore;
+import com.trator.chatranslator.cache.WorldTextCache;
 import com.trator.chatranslator.config.ModConfig;
+import com.trator.chatranslator.diagnostics.DiagnosticLog;
+import com.trator.chatranslator.network.AppWorldsProvider;
+import com.trator.chatranslator.network.LibreTranslateProvider;
+import com.trator.chatranslator.network.TranslationService;
 import net.fabricmc.fabric.api.client.command.v2.ClientCommandManager;
 import net.fabricmc.fabric.api.client.command.v2.ClientCommandRegistrationCallback;
 import net.fabricmc.fabric.api.client.command.v2.FabricClientCommandSource;
 import net.minecraft.text.Text;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
@@ -22,6 +36,12 @@ import static net.fabricmc.fabric.api.client.command.v2.ClientCommandManager.lit
 public class ConfigCommand {
     private static final Set<String> VALID_LANGUAGES = new HashSet<>(Arrays.asList(
             "auto", "zh-CN", "en", "ja", "ko", "fr", "de", "es", "it", "ru"));
+    private static final Set<String> VALID_PROVIDERS = new HashSet<>(Arrays.asList(
+            AppWorldsProvider.NAME, LibreTranslateProvider.NAME));
+    private static final Set<String> VALID_SIDECAR_MODES = new HashSet<>(Arrays.asList(
+            ModConfig.SIDECAR_OFF, ModConfig.SIDECAR_CONNECT, ModConfig.SIDECAR_AUTO));
+    private static final Set<String> VALID_DISPLAY_MODES = new HashSet<>(Arrays.asList(
+            ModConfig.DISPLAY_MESSAGE, ModConfig.DISPLAY_INLINE, ModConfig.DISPLAY_HOVER));
 
     public static void register() {
         ClientCommandRegistrationCallback.EVENT.register((dispatcher, registryAccess) -> {
@@ -42,12 +62,32 @@ public class ConfigCommand {
                     source.sendFeedback(Text.literal("§e翻译状态:§f" + (ModConfig.isTranslationEnabled() ? "§a已启用" : "§c已禁用")));
                     source.sendFeedback(Text.literal("§e源语言:§f" + getLanguageName(ModConfig.getSourceLanguage())));
                     source.sendFeedback(Text.literal("§e目标语言:§f" + getLanguageName(ModConfig.getTargetLanguage())));
+                    source.sendFeedback(Text.literal("§e发出消息翻译:§f" + (ModConfig.getOutgoingLanguage() == null ? "§c已禁用"
+                            : getLanguageName(ModConfig.getOutgoingLanguage())
+                            + (TranslationService.supportsTargetLanguage(ModConfig.getOutgoingLanguage()) ? "" : " §c(当前接口不支持,已暂停)"))));
                     source.sendFeedback(Text.literal("§e显示原文:§f" + (ModConfig.shouldShowOriginalMessage() ? "§a是" : "§c否")));
+                    source.sendFeedback(Text.literal("§e译文显示方式:§f" + ModConfig.getDisplayMode()));
+                    source.sendFeedback(Text.literal("§e按需翻译:§f" + (ModConfig.isLazyTranslation() ? "§a已启用" : "§c已禁用")));
+                    source.sendFeedback(Text.literal("§e告示牌/书/物品说明:§f" + (ModConfig.isWorldTextTranslation() ? "§a已启用" : "§c已禁用")));
+                    source.sendFeedback(Text.literal("§e翻译接口:§f" + ModConfig.getTranslationProvider()));
+                    if (LibreTranslateProvider.NAME.equals(ModConfig.getTranslationProvider())) {
+                        source.sendFeedback(Text.literal("§eLibreTranslate:§f" + ModConfig.getLibreTranslateUrl()
+                                + " §e密钥:§f" + (ModConfig.getLibreTranslateApiKey() == null || ModConfig.getLibreTranslateApiKey().isEmpty() ? "未设置" : "已设置")
+                                + " §e并发:§f" + ModConfig.getLibreTranslateMaxConcurrency()));
+                    }
+                    source.sendFeedback(Text.literal("§e共享守护进程:§f" + ModConfig.getSidecarMode()));
+                    source.sendFeedback(Text.literal("§e服务器翻译:§f" + (ServerContext.isServerTranslationActive() ? "§a使用中" : "§c未使用")));
+                    source.sendFeedback(Text.literal("§e排队中:§f" + ChatMessageListener.getQueuedCount()
+                            + " §e丢弃(超时/溢出):§f" + ChatMessageListener.getShedExpiredCount()
+                            + "/" + ChatMessageListener.getShedOverflowCount()));
+                    source.sendFeedback(Text.literal("§e固定的服务器公告:§f" + BroadcastStore.size()));
                     return 1;
                 }));
         translatorCommand.then(literal("toggle")
                 .executes(context -> {
                     ModConfig.toggleTranslation();
+                    ChatMessageListener.cancelPending("切换翻译开关");
+                    ServerTranslationClient.sync();
                     boolean enabled = ModConfig.isTranslationEnabled();
                     context.getSource().sendFeedback(Text.literal(
                             enabled ? "§a聊天翻译ON" : "§c聊天翻译OFF"));
@@ -75,8 +115,13 @@ public class ConfigCommand {
                             String language = StringArgumentType.getString(context, "language");
                             if (VALID_LANGUAGES.contains(language) && !language.equals("auto")) {
                                 ModConfig.setTargetLanguage(language);
+                                ChatMessageListener.cancelPending("修改目标语言");
+                                // 世界文本的翻译不区分语言，重新翻译
+                                WorldTextCache.clear();
+                                ServerTranslationClient.sync();
                                 context.getSource().sendFeedback(Text.literal(
                                         "§a目标语言已设置为:" + getLanguageName(language)));
+                                warnIfUnsupported(context.getSource(), language);
                             } else if (language.equals("auto")) {
                                 context.getSource().sendFeedback(Text.literal(
                                         "§c目标语言不能设置为'auto'"));
@@ -87,7 +132,121 @@ public class ConfigCommand {
                             return 1;
                         })));
 
-        // 设置是否显示原文
+        // 发出的消息翻译成的语言
+        translatorCommand.then(literal("outgoing")
+                .then(argument("language", StringArgumentType.word())
+                        .executes(context -> {
+                            String language = StringArgumentType.getString(context, "language");
+                            if (language.equals("off")) {
+                                ModConfig.setOutgoingLanguage("");
+                                OutgoingTranslator.reset();
+                                context.getSource().sendFeedback(Text.literal("§a发出消息翻译已禁用"));
+                            } else if (VALID_LANGUAGES.contains(language) && !language.equals("auto")
+                                    && !TranslationService.supportsTargetLanguage(language)) {
+                                context.getSource().sendFeedback(Text.literal("§c当前翻译接口不能翻译为" + getLanguageName(language)
+                                        + ",发出消息翻译未启用,请使用 /translator provider " + LibreTranslateProvider.NAME));
+                            } else if (VALID_LANGUAGES.contains(language) && !language.equals("auto")) {
+                                ModConfig.setOutgoingLanguage(language);
+                                context.getSource().sendFeedback(Text.literal(
+                                        "§a发出的消息将翻译为:" + getLanguageName(language)));
+                            } else {
+                                context.getSource().sendFeedback(Text.literal(
+                                        "§c无效的语言代码,可用: off, " + String.join(", ", VALID_LANGUAGES)));
+                            }
+                            return 1;
+                        })));
+
+        // 设置翻译接口
+        translatorCommand.then(literal("provider")
+                .then(argument("name", StringArgumentType.word())
+                        .executes(context -> {
+                            String name = StringArgumentType.getString(context, "name");
+                            if (VALID_PROVIDERS.contains(name)) {
+                                ModConfig.setTranslationProvider(name);
+                                context.getSource().sendFeedback(Text.literal(
+                                        "§a翻译接口已设置为:" + name));
+                                warnIfUnsupported(context.getSource(), ModConfig.getTargetLanguage());
+                                String outgoing = ModConfig.getOutgoingLanguage();
+                                if (outgoing != null && !TranslationService.supportsTargetLanguage(outgoing)) {
+                                    context.getSource().sendFeedback(Text.literal("§e该接口不能翻译为"
+                                            + getLanguageName(outgoing) + ",发出消息翻译已暂停"));
+                                }
+                            } else {
+                                context.getSource().sendFeedback(Text.literal(
+                                        "§c无效的翻译接口,可用:" + String.join(", ", VALID_PROVIDERS)));
+                            }
+                            return 1;
+                        })));
+
+        // 设置自建 LibreTranslate 地址
+        translatorCommand.then(literal("libreUrl")
+                .then(argument("url", StringArgumentType.greedyString())
+                        .executes(context -> {
+                            String url = StringArgumentType.getString(context, "url").trim();
+                            ModConfig.setLibreTranslateUrl(url);
+                            context.getSource().sendFeedback(Text.literal(
+                                    "§aLibreTranslate 地址已设置为:" + url));
+                            return 1;
+                        })));
+
+        // 设置自建 LibreTranslate 的 API 密钥，off 表示不使用密钥
+        translatorCommand.then(literal("libreKey")
+                .then(argument("key", StringArgumentType.greedyString())
+                        .executes(context -> {
+                            String key = StringArgumentType.getString(context, "key").trim();
+                            if (key.equalsIgnoreCase("off")) {
+                                ModConfig.setLibreTranslateApiKey("");
+                                context.getSource().sendFeedback(Text.literal("§aLibreTranslate API 密钥已清除"));
+                            } else {
+                                ModConfig.setLibreTranslateApiKey(key);
+                                context.getSource().sendFeedback(Text.literal("§aLibreTranslate API 密钥已设置"));
+                            }
+                            return 1;
+                        })));
+
+        // 设置自建 LibreTranslate 允许的并发请求数
+        translatorCommand.then(literal("libreConcurrency")
+                .then(argument("count", IntegerArgumentType.integer(1, 64))
+                        .executes(context -> {
+                            int count = IntegerArgumentType.getInteger(context, "count");
+                            ModConfig.setLibreTranslateMaxConcurrency(count);
+                            context.getSource().sendFeedback(Text.literal(
+                                    "§aLibreTranslate 并发请求数已设置 " + count));
+                            return 1;
+                        })));
+
+        // 设置多个客户端共用的翻译守护进程
+        translatorCommand.then(literal("sidecar")
+                .then(argument("mode", StringArgumentType.word())
+                        .executes(context -> {
+                            String mode = StringArgumentType.getString(context, "mode");
+                            if (VALID_SIDECAR_MODES.contains(mode)) {
+                                ModConfig.setSidecarMode(mode);
+                                context.getSource().sendFeedback(Text.literal(
+                                        "§a共享守护进程已设置为:" + mode));
+                            } else {
+                                context.getSource().sendFeedback(Text.literal(
+                                        "§c无效的模式,可用:" + String.join(", ", VALID_SIDECAR_MODES)));
+                            }
+                            return 1;
+                        })));
+
+        // 译文显示方式：另起一条消息、附加在原消息行末尾或悬停显示
+        translatorCommand.then(literal("display")
+                .then(argument("mode", StringArgumentType.word())
+                        .executes(context -> {
+                            String mode = StringArgumentType.getString(context, "mode");
+                            if (VALID_DISPLAY_MODES.contains(mode)) {
+                                ModConfig.setDisplayMode(mode);
+                                context.getSource().sendFeedback(Text.literal(
+                                        "§a译文显示方式已设置为:" + mode));
+                            } else {
+                                context.getSource().sendFeedback(Text.literal(
+                                        "§c无效的显示方式,可用:" + String.join(", ", VALID_DISPLAY_MODES)));
+                            }
+                            return 1;
+                        })));
+
         translatorCommand.then(literal("showOriginal")
                 .then(argument("value", BoolArgumentType.bool())
                         .executes(context -> {
@@ -109,10 +268,124 @@ public class ConfigCommand {
                             return 1;
                         })));
 
+        // 服务器安装了本模组时由服务器统一翻译
+        translatorCommand.then(literal("serverMode")
+                .then(argument("value", BoolArgumentType.bool())
+                        .executes(context -> {
+                            boolean value = BoolArgumentType.getBool(context, "value");
+                            ModConfig.setServerTranslation(value);
+                            ServerTranslationClient.sync();
+                            context.getSource().sendFeedback(Text.literal(
+                                    "§a服务器翻译已" + (value ? "启用" : "禁用")));
+                            return 1;
+                        })));
+
+        // 翻译告示牌、书和物品说明
+        translatorCommand.then(literal("worldText")
+                .then(argument("value", BoolArgumentType.bool())
+                        .executes(context -> {
+                            boolean value = BoolArgumentType.getBool(context, "value");
+                            ModConfig.setWorldTextTranslation(value);
+                            // 关闭时告示牌和书恢复原文
+                            WorldTextCache.clear();
+                            context.getSource().sendFeedback(Text.literal(
+                                    "§a告示牌/书/物品说明翻译已" + (value ? "启用" : "禁用")));
+                            return 1;
+                        })));
+
+        // 同时进行的翻译请求上限
+        translatorCommand.then(literal("inflight")
+                .then(argument("count", IntegerArgumentType.integer(1, 64))
+                        .executes(context -> {
+                            int count = IntegerArgumentType.getInteger(context, "count");
+                            ModConfig.setMaxInFlightRequests(count);
+                            context.getSource().sendFeedback(Text.literal(
+                                    "§a同时进行的翻译请求上限已设置 " + count
+                                            + "§7(当前接口实际可用 " + TranslationService.getMaxConcurrentRequests() + ")"));
+                            return 1;
+                        })));
+
+        // 缓存近似匹配：只忽略大小写、标点和拉长的字母
+        translatorCommand.then(literal("fuzzy")
+                .then(argument("value", BoolArgumentType.bool())
+                        .executes(context -> {
+                            boolean value = BoolArgumentType.getBool(context, "value");
+                            ModConfig.setFuzzyCache(value);
+                            context.getSource().sendFeedback(Text.literal(
+                                    value ? "§a缓存近似匹配已开启" : "§a缓存近似匹配已关闭，只有原文完全相同才命中缓存"));
+                            return 1;
+                        })));
+
+        // 按需翻译：只在悬停或点击时翻译
+        translatorCommand.then(literal("lazy")
+                .then(argument("value", BoolArgumentType.bool())
+                        .executes(context -> {
+                            boolean value = BoolArgumentType.getBool(context, "value");
+                            ModConfig.setLazyTranslation(value);
+                            if (value) {
+                                // 已经排队的消息不再翻译
+                                ChatMessageListener.cancelPending("切换到按需翻译");
+                            }
+                            context.getSource().sendFeedback(Text.literal(
+                                    "§a按需翻译已" + (value ? "启用,悬停查看译文,点击发送到聊天框" : "禁用")));
+                            return 1;
+                        })));
+
+        // 点击按需翻译的消息时执行
+        translatorCommand.then(literal("show")
+                .then(argument("id", IntegerArgumentType.integer(0))
+                        .executes(context -> {
+                            if (!LazyTranslation.show(IntegerArgumentType.getInteger(context, "id"))) {
+                                context.getSource().sendFeedback(Text.literal("§c消息太旧,无法翻译"));
+                            }
+                            return 1;
+                        })));
+
+        // 诊断模式：记录每条消息的处理细节
+        translatorCommand.then(literal("diagnostics")
+                .then(argument("value", BoolArgumentType.bool())
+                        .executes(context -> {
+                            boolean value = BoolArgumentType.getBool(context, "value");
+                            ModConfig.setDiagnosticMode(value);
+                            context.getSource().sendFeedback(Text.literal(
+                                    "§a诊断模式已" + (value ? "启用" : "禁用")));
+                            return 1;
+                        })));
+
+        // 导出诊断记录
+        translatorCommand.then(literal("dump")
+                .executes(context -> {
+                    FabricClientCommandSource source = context.getSource();
+                    if (DiagnosticLog.size() == 0) {
+                        source.sendFeedback(Text.literal(
+                                "§c没有诊断记录,请先使用 /translator diagnostics true"));
+                        return 1;
+                    }
+                    try {
+                        Path file = DiagnosticLog.dump();
+                        source.sendFeedback(Text.literal(
+                                "§a已导出" + DiagnosticLog.size() + "条诊断记录:§f" + file));
+                    } catch (IOException e) {
+                        ChatTranslatorMod.LOGGER.error("failed to dump diagnostics", e);
+                        source.sendFeedback(Text.literal("§c导出失败:" + e.getMessage()));
+                    }
+                    return 1;
+                }));
+
+        // 翻译聊天框中已有的消息
+        translatorCommand.then(literal("backlog")
+                .executes(context -> translateBacklog(context.getSource(), 50))
+                .then(argument("count", IntegerArgumentType.integer(1, 100))
+                        .executes(context -> translateBacklog(context.getSource(),
+                                IntegerArgumentType.getInteger(context, "count")))));
+
         // 重置所有配置到默认值
         translatorCommand.then(literal("reset")
                 .executes(context -> {
                     ModConfig.resetToDefault();
+                    ChatMessageListener.cancelPending("重置配置");
+                    WorldTextCache.clear();
+                    ServerTranslationClient.sync();
                     context.getSource().sendFeedback(Text.literal(
                             "§a配置已重置"));
                     return 1;
@@ -127,7 +400,22 @@ public class ConfigCommand {
                     source.sendFeedback(Text.literal("§e/translator toggle §f- 开启/关闭翻译功能"));
                     source.sendFeedback(Text.literal("§e/translator source <语言> §f- 设置源语言"));
                     source.sendFeedback(Text.literal("§e/translator target <语言> §f- 设置目标语言"));
+                    source.sendFeedback(Text.literal("§e/translator outgoing <语言|off> §f- 输入时预先翻译自己发出的消息"));
                     source.sendFeedback(Text.literal("§e/translator showOriginal <true|false> §f- 设置是否显示原文"));
+                    source.sendFeedback(Text.literal("§e/translator display <message|inline|hover> §f- 译文另起一条、附加在原消息后或悬停显示"));
+                    source.sendFeedback(Text.literal("§e/translator provider <接口> §f- 设置翻译接口"));
+                    source.sendFeedback(Text.literal("§e/translator libreUrl <地址> §f- 设置自建 LibreTranslate 地址"));
+                    source.sendFeedback(Text.literal("§e/translator libreKey <密钥|off> §f- 设置自建 LibreTranslate 的 API 密钥"));
+                    source.sendFeedback(Text.literal("§e/translator libreConcurrency <1-64> §f- 设置自建 LibreTranslate 允许的并发请求数"));
+                    source.sendFeedback(Text.literal("§e/translator sidecar <off|connect|auto> §f- 多个客户端共用翻译守护进程"));
+                    source.sendFeedback(Text.literal("§e/translator serverMode <true|false> §f- 服务器支持时由服务器统一翻译"));
+                    source.sendFeedback(Text.literal("§e/translator worldText <true|false> §f- 翻译告示牌、书和物品说明"));
+                    source.sendFeedback(Text.literal("§e/translator inflight <1-64> §f- 设置同时进行的翻译请求上限"));
+                    source.sendFeedback(Text.literal("§e/translator lazy <true|false> §f- 只在悬停或点击消息时翻译"));
+                    source.sendFeedback(Text.literal("§e/translator fuzzy <true|false> §f- 开启/关闭缓存近似匹配（忽略大小写、标点和拉长的字母）"));
+                    source.sendFeedback(Text.literal("§e/translator diagnostics <true|false> §f- 记录每条消息的处理细节"));
+                    source.sendFeedback(Text.literal("§e/translator dump §f- 导出诊断记录到文件"));
+                    source.sendFeedback(Text.literal("§e/translator backlog [条数] §f- 翻译聊天框中最近的消息"));
                     source.sendFeedback(Text.literal("§e/translator reset §f- 重置所有配置"));
                     source.sendFeedback(Text.literal("§e/translator help §f- 显示此帮助"));
                     return 1;
@@ -146,6 +434,25 @@ public class ConfigCommand {
         dispatcher.register(translatorCommand);
     }
 
+    // 翻译聊天框中最近的消息，结果直接附加在原消息后面
+    private static int translateBacklog(FabricClientCommandSource source, int count) {
+        int sent = ChatLineAnnotator.translateBacklog(count);
+        if (sent == 0) {
+            source.sendFeedback(Text.literal("§e最近" + count + "条消息中没有需要翻译的内容"));
+        } else {
+            source.sendFeedback(Text.literal("§a正在翻译最近的" + sent + "条消息..."));
+        }
+        return 1;
+    }
+
+    // 当前翻译接口做不到时提示，否则玩家看不到任何译文
+    private static void warnIfUnsupported(FabricClientCommandSource source, String language) {
+        if (!TranslationService.supportsTargetLanguage(language)) {
+            source.sendFeedback(Text.literal("§e当前翻译接口不支持翻译为" + getLanguageName(language)
+                    + ",请使用 /translator provider " + LibreTranslateProvider.NAME));
+        }
+    }
+
     // 获取语言的可读名称
     private static String getLanguageName(String code) {
         switch (code) {
@@ -9,11 +9,27 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 public class ModConfig {
+    // 守护进程模式：off 不使用，connect 只连接已有的守护进程，auto 连接不上时在本进程内启动
+    public static final String SIDECAR_OFF = "off";
+    public static final String SIDECAR_CONNECT = "connect";
+    public static final String SIDECAR_AUTO = "auto";
+    // 译文显示方式：message 另起一条消息，inline 附加在原消息行末尾，hover 悬停在原消息上时显示
+    public static final String DISPLAY_MESSAGE = "message";
+    public static final String DISPLAY_INLINE = "inline";
+    public static final String DISPLAY_HOVER = "hover";
+
     private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
-    private static final File CONFIG_FILE = FabricLoader.getInstance().getConfigDir().resolve("chatranslator.json").toFile();
-    private static ConfigData configData;
+    private static File configFile;
+    // 配置目录，离线回放工具换成临时目录，为空时使用游戏的配置目录
+    private static volatile Path configDir;
+    // 配置在第一次使用时才读取，不占用游戏启动时间
+    private static volatile ConfigData configData;
+    // 每次读取或保存配置时加一，由配置推导出的缓存值据此判断是否过期
+    private static volatile int revision;
 
     public static class ConfigData {
         public boolean translationEnabled = true;
@@ -21,10 +37,32 @@ public class ModConfig {
         public String targetLanguage = "zh-CN";
         public boolean showOriginalMessage = true;
         public int translationDelay = 0; // 翻译延迟（毫秒）
+        public String translationProvider = "appworlds"; // appworlds 或 libretranslate
+        public String libreTranslateUrl = "http://127.0.0.1:5000"; // 自建 LibreTranslate 地址
+        public String libreTranslateApiKey = "";
+        public int libreTranslateMaxConcurrency = 8; // 自建接口允许的并发请求数
+        public int deliveryMaxPerTick = 2; // 每个客户端 tick 最多写入聊天框的次数
+        public int deliveryBudgetMicros = 1000; // 每个客户端 tick 写入聊天框的时间预算（微秒）
+        public int queueCapacity = 64; // 翻译队列最多保留的消息数
+        public int maxInFlightPerSender = 1; // 单个玩家同时进行中的翻译上限
+        public int maxInFlightRequests = 8; // 同时进行的翻译请求上限，实际还受翻译接口允许的并发数限制
+        public int maxMessageAgeMs = 15000; // 消息在队列中等待超过此时间则丢弃（毫秒），0 表示不丢弃
+        public String sidecarMode = SIDECAR_OFF; // 同一台机器上的多个客户端共用一个翻译守护进程
+        public String sidecarSocket = ""; // 守护进程的套接字路径，为空时使用当前用户私有的目录
+        public boolean serverTranslation = true; // 服务器安装了本模组时由服务器统一翻译
+        public boolean worldTextTranslation = false; // 翻译告示牌、书和物品说明
+        public boolean diagnosticMode = false; // 把每条消息的处理细节记录到内存缓冲区，用 /translator dump 导出
+        public boolean fuzzyCache = true; // 原文只在大小写、标点或拉长的字母上不同时也命中缓存
+        public String outgoingLanguage = ""; // 发出的消息翻译成的语言，为空时不翻译
+        public boolean lazyTranslation = false; // 只在悬停或点击聊天消息时翻译
+        public String displayMode = DISPLAY_MESSAGE; // 译文的显示方式，inline 和 hover 不增加聊天框的行数
     }
 
-    public static void init() {
-        if (!CONFIG_FILE.exists()) {
+    public static synchronized void init() {
+        if (configData != null) {
+            return;
+        }
+        if (!getConfigFile().exists()) {
             configData = new ConfigData();
             save();
         } else {
@@ -33,81 +71,288 @@ public class ModConfig {
     }
 
     public static void load() {
-        try (FileReader reader = new FileReader(CONFIG_FILE)) {
-            configData = GSON.fromJson(reader, ConfigData.class);
+        try (FileReader reader = new FileReader(getConfigFile())) {
+            ConfigData loaded = GSON.fromJson(reader, ConfigData.class);
+            // 空文件会解析为 null
+            configData = loaded != null ? loaded : new ConfigData();
+            revision++;
         } catch (IOException e) {
             ChatTranslatorMod.LOGGER.error("failed to load config", e);
             configData = new ConfigData();
         }
     }
 
+    private static synchronized File getConfigFile() {
+        if (configFile == null) {
+            configFile = getConfigDir().resolve("chatranslator.json").toFile();
+        }
+        return configFile;
+    }
+
+    /**
+     * @return 配置文件和按服务器保存的数据所在的目录
+     */
+    public static Path getConfigDir() {
+        Path dir = configDir;
+        return dir != null ? dir : FabricLoader.getInstance().getConfigDir();
+    }
+
+    /**
+     * 改用指定的配置目录，下次使用时从新目录读取配置（离线回放工具没有游戏目录时使用）
+     */
+    public static synchronized void setConfigDir(Path dir) {
+        configDir = dir;
+        configFile = null;
+        configData = null;
+    }
+
+    // 获取配置数据，尚未读取时先读取
+    private static ConfigData data() {
+        ConfigData data = configData;
+        if (data == null) {
+            init();
+            data = configData;
+        }
+        return data;
+    }
+
     public static void save() {
+        revision++;
         try {
-            if (!CONFIG_FILE.exists()) {
-                CONFIG_FILE.getParentFile().mkdirs();
-                CONFIG_FILE.createNewFile();
+            if (!getConfigFile().exists()) {
+                getConfigFile().getParentFile().mkdirs();
+                getConfigFile().createNewFile();
             }
             
-            try (FileWriter writer = new FileWriter(CONFIG_FILE)) {
-                GSON.toJson(configData, writer);
+            try (FileWriter writer = new FileWriter(getConfigFile())) {
+                GSON.toJson(data(), writer);
             }
         } catch (IOException e) {
             ChatTranslatorMod.LOGGER.error("failed to save config", e);
         }
     }
 
+    /**
+     * @return 配置的版本号，配置被修改或重新读取后变化
+     */
+    public static int getRevision() {
+        return revision;
+    }
+
     public static void resetToDefault() {
         configData = new ConfigData();
         save();
     }
 
     public static boolean isTranslationEnabled() {
-        return configData.translationEnabled;
+        return data().translationEnabled;
     }
 
     public static void toggleTranslation() {
-        configData.translationEnabled = !configData.translationEnabled;
+        data().translationEnabled = !data().translationEnabled;
         save();
     }
 
     public static String getSourceLanguage() {
-        return configData.sourceLanguage;
+        return data().sourceLanguage;
     }
 
     public static String getTargetLanguage() {
-        return configData.targetLanguage;
+        return data().targetLanguage;
     }
 
     public static boolean shouldShowOriginalMessage() {
-        return configData.showOriginalMessage;
+        return data().showOriginalMessage;
     }
     
     public static int getTranslationDelay() {
-        return configData.translationDelay;
+        return data().translationDelay;
+    }
+
+    public static String getTranslationProvider() {
+        return data().translationProvider;
+    }
+
+    public static String getLibreTranslateUrl() {
+        return data().libreTranslateUrl;
+    }
+
+    public static String getLibreTranslateApiKey() {
+        return data().libreTranslateApiKey;
+    }
+
+    public static int getLibreTranslateMaxConcurrency() {
+        return data().libreTranslateMaxConcurrency;
+    }
+
+    public static int getDeliveryMaxPerTick() {
+        return Math.max(1, data().deliveryMaxPerTick);
+    }
+
+    public static int getDeliveryBudgetMicros() {
+        return Math.max(0, data().deliveryBudgetMicros);
+    }
+
+    public static int getQueueCapacity() {
+        return Math.max(1, data().queueCapacity);
+    }
+
+    public static int getMaxInFlightPerSender() {
+        return Math.max(1, data().maxInFlightPerSender);
+    }
+
+    public static int getMaxInFlightRequests() {
+        return Math.max(1, Math.min(64, data().maxInFlightRequests));
+    }
+
+    public static long getMaxMessageAgeMs() {
+        return Math.max(0, data().maxMessageAgeMs);
+    }
+
+    public static String getSidecarMode() {
+        String mode = data().sidecarMode;
+        return mode == null || mode.isEmpty() ? SIDECAR_OFF : mode;
+    }
+
+    public static String getDisplayMode() {
+        String mode = data().displayMode;
+        return mode == null || mode.isEmpty() ? DISPLAY_MESSAGE : mode;
+    }
+
+    /**
+     * @return 译文是否附加在原消息行上，而不是另起一条消息
+     */
+    public static boolean isInPlaceDisplay() {
+        return !DISPLAY_MESSAGE.equals(getDisplayMode());
+    }
+
+    public static String getSidecarSocket() {
+        String socket = data().sidecarSocket;
+        if (socket == null || socket.isEmpty()) {
+            // 放在只有当前用户能访问的目录里，同一台机器的其他用户无法抢先创建或替换套接字
+            // 优先使用每个用户私有的运行时目录，没有时退回临时目录下按用户区分的子目录
+            String runtimeDir = System.getenv("XDG_RUNTIME_DIR");
+            String baseDir = runtimeDir != null && !runtimeDir.isEmpty() ? runtimeDir : System.getProperty("java.io.tmpdir");
+            return Paths.get(baseDir, "chatranslator-" + System.getProperty("user.name"), "sidecar.sock").toString();
+        }
+        return socket;
+    }
+
+    public static boolean isServerTranslation() {
+        return data().serverTranslation;
+    }
+
+    public static boolean isWorldTextTranslation() {
+        return data().worldTextTranslation;
+    }
+
+    public static boolean isLazyTranslation() {
+        return data().lazyTranslation;
+    }
+
+    public static boolean isDiagnosticMode() {
+        return data().diagnosticMode;
+    }
+
+    /**
+     * @return 发出的消息翻译成的语言，未启用时返回 null
+     */
+    public static String getOutgoingLanguage() {
+        String language = data().outgoingLanguage;
+        return language == null || language.isEmpty() ? null : language;
+    }
+
+    public static boolean isFuzzyCache() {
+        return data().fuzzyCache;
     }
 
     public static void setTranslationEnabled(boolean enabled) {
-        configData.translationEnabled = enabled;
+        data().translationEnabled = enabled;
         save();
     }
     
     public static void setSourceLanguage(String language) {
-        configData.sourceLanguage = language;
+        data().sourceLanguage = language;
         save();
     }
     
     public static void setTargetLanguage(String language) {
-        configData.targetLanguage = language;
+        data().targetLanguage = language;
         save();
     }
     
     public static void setShowOriginalMessage(boolean show) {
-        configData.showOriginalMessage = show;
+        data().showOriginalMessage = show;
         save();
     }
     
     public static void setTranslationDelay(int delay) {
-        configData.translationDelay = delay;
+        data().translationDelay = delay;
+        save();
+    }
+    
+    public static void setTranslationProvider(String provider) {
+        data().translationProvider = provider;
+        save();
+    }
+    
+    public static void setLibreTranslateUrl(String url) {
+        data().libreTranslateUrl = url;
+        save();
+    }
+    
+    public static void setLibreTranslateApiKey(String apiKey) {
+        data().libreTranslateApiKey = apiKey;
+        save();
+    }
+    
+    public static void setLibreTranslateMaxConcurrency(int maxConcurrency) {
+        data().libreTranslateMaxConcurrency = maxConcurrency;
+        save();
+    }
+    
+    public static void setSidecarMode(String mode) {
+        data().sidecarMode = mode;
+        save();
+    }
+    
+    public static void setServerTranslation(boolean enabled) {
+        data().serverTranslation = enabled;
+        save();
+    }
+    
+    public static void setWorldTextTranslation(boolean enabled) {
+        data().worldTextTranslation = enabled;
+        save();
+    }
+    
+    public static void setLazyTranslation(boolean enabled) {
+        data().lazyTranslation = enabled;
+        save();
+    }
+    
+    public static void setDisplayMode(String mode) {
+        data().displayMode = mode;
+        save();
+    }
+    
+    public static void setDiagnosticMode(boolean enabled) {
+        data().diagnosticMode = enabled;
+        save();
+    }
+    
+    public static void setMaxInFlightRequests(int limit) {
+        data().maxInFlightRequests = limit;
+        save();
+    }
+    
+    public static void setFuzzyCache(boolean enabled) {
+        data().fuzzyCache = enabled;
+        save();
+    }
+    
+    public static void setOutgoingLanguage(String language) {
+        data().outgoingLanguage = language;
         save();
     }
 } 
\ No newline at end of file
@@ -0,0 +1,24 @@
+package com.trator.chatranslator.diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * 在客户端线程上把翻译结果写入聊天框
+ */
+@Name("chatranslator.ChatDelivery")
+@Label("Chat Delivery")
+@Category({"Chat Translator", "Client"})
+@Description("一个客户端 tick 内把翻译结果写入聊天框所用的时间")
+public class ChatDeliveryEvent extends jdk.jfr.Event {
+    @Label("Messages Delivered")
+    public int messageCount;
+
+    @Label("ChatHud Writes")
+    public int writeCount;
+
+    @Label("Messages Remaining")
+    public int remaining;
+}
@@ -0,0 +1,184 @@
+package com.trator.chatranslator.diagnostics;
+
+import com.trator.chatranslator.ChatTranslatorMod;
+import com.trator.chatranslator.config.ModConfig;
+import org.slf4j.helpers.MessageFormatter;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 热路径上的诊断日志
+ * 每条消息的详细信息不再直接写入游戏日志，诊断模式下只记录到固定大小的内存环形缓冲区（不做字符串格式化），
+ * 需要时用 /translator dump 导出到文件；平时只按固定间隔输出一行计数汇总
+ */
+public class DiagnosticLog {
+    private static final int CAPACITY = 2048;
+    private static final long SUMMARY_INTERVAL_MS = 60_000;
+    // 请求失败时两次输出 ERROR 之间的最小间隔
+    private static final long ERROR_INTERVAL_MS = 60_000;
+
+    private static final AtomicReferenceArray<Entry> BUFFER = new AtomicReferenceArray<>(CAPACITY);
+    private static final AtomicLong NEXT = new AtomicLong();
+    // 计数从不清零，汇总时输出与上次汇总的差值
+    private static final Map<String, LongAdder> COUNTERS = new ConcurrentHashMap<>();
+    private static final Map<String, Long> SUMMARIZED = new ConcurrentHashMap<>();
+    private static final AtomicLong lastSummaryTime = new AtomicLong(System.currentTimeMillis());
+    private static final AtomicLong lastErrorTime = new AtomicLong();
+    private static final AtomicLong suppressedErrors = new AtomicLong();
+
+    private static class Entry {
+        final long time;
+        final String thread;
+        final String format;
+        final Object[] args;
+
+        Entry(String format, Object[] args) {
+            this.time = System.currentTimeMillis();
+            this.thread = Thread.currentThread().getName();
+            this.format = format;
+            this.args = args;
+        }
+    }
+
+    public static void trace(String format) {
+        if (ModConfig.isDiagnosticMode()) {
+            record(format, null);
+        }
+        if (ChatTranslatorMod.LOGGER.isDebugEnabled()) {
+            ChatTranslatorMod.LOGGER.debug(format);
+        }
+    }
+
+    public static void trace(String format, Object arg) {
+        if (ModConfig.isDiagnosticMode()) {
+            record(format, new Object[]{arg});
+        }
+        if (ChatTranslatorMod.LOGGER.isDebugEnabled()) {
+            ChatTranslatorMod.LOGGER.debug(format, arg);
+        }
+    }
+
+    public static void trace(String format, Object arg1, Object arg2) {
+        if (ModConfig.isDiagnosticMode()) {
+            record(format, new Object[]{arg1, arg2});
+        }
+        if (ChatTranslatorMod.LOGGER.isDebugEnabled()) {
+            ChatTranslatorMod.LOGGER.debug(format, arg1, arg2);
+        }
+    }
+
+    /**
+     * 记录一次请求失败：详细信息写入诊断缓冲区，游戏日志中每隔一段时间最多输出一次带堆栈的 ERROR，
+     * 接口不可用时每条消息都失败也不会刷屏
+     * @param what 失败的操作，例如 "translate (libretranslate)"
+     */
+    public static void failure(String what, Throwable error) {
+        trace("{} failed: {}", what, String.valueOf(error));
+        long now = System.currentTimeMillis();
+        long last = lastErrorTime.get();
+        if (now - last < ERROR_INTERVAL_MS || !lastErrorTime.compareAndSet(last, now)) {
+            suppressedErrors.incrementAndGet();
+            return;
+        }
+        long suppressed = suppressedErrors.getAndSet(0);
+        if (suppressed > 0) {
+            ChatTranslatorMod.LOGGER.error("{} failed (另有{}次失败未输出，见诊断记录)", what, suppressed, error);
+        } else {
+            ChatTranslatorMod.LOGGER.error("{} failed", what, error);
+        }
+    }
+
+    /**
+     * 计数加一，计数会出现在下一次汇总中
+     */
+    public static void count(String key) {
+        COUNTERS.computeIfAbsent(key, k -> new LongAdder()).increment();
+    }
+
+    /**
+     * 距离上次汇总超过间隔时输出一行计数并清零，可以频繁调用
+     */
+    public static void logSummaryIfDue() {
+        long now = System.currentTimeMillis();
+        long last = lastSummaryTime.get();
+        if (now - last < SUMMARY_INTERVAL_MS || !lastSummaryTime.compareAndSet(last, now)) {
+            return;
+        }
+
+        Map<String, Long> snapshot = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> entry : COUNTERS.entrySet()) {
+            long total = entry.getValue().sum();
+            Long previous = SUMMARIZED.put(entry.getKey(), total);
+            long value = total - (previous == null ? 0 : previous);
+            if (value > 0) {
+                snapshot.put(entry.getKey(), value);
+            }
+        }
+        if (!snapshot.isEmpty()) {
+            ChatTranslatorMod.LOGGER.info("最近{}秒: {}", (now - last) / 1000, snapshot);
+        }
+    }
+
+    /**
+     * @return 启动以来的全部计数，离线回放工具用来生成报告
+     */
+    public static Map<String, Long> totals() {
+        Map<String, Long> totals = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> entry : COUNTERS.entrySet()) {
+            totals.put(entry.getKey(), entry.getValue().sum());
+        }
+        return totals;
+    }
+
+    /**
+     * 把环形缓冲区中的记录按时间顺序写入文件
+     * @return 写入的文件
+     */
+    public static Path dump() throws IOException {
+        SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm:ss.SSS");
+        Path file = ModConfig.getConfigDir()
+                .resolve("chatranslator").resolve("diagnostics")
+                .resolve("dump-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".log");
+        Files.createDirectories(file.getParent());
+
+        long end = NEXT.get();
+        long start = Math.max(0, end - CAPACITY);
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (long i = start; i < end; i++) {
+                Entry entry = BUFFER.get((int) (i % CAPACITY));
+                if (entry == null) {
+                    continue;
+                }
+                writer.write("[" + timeFormat.format(new Date(entry.time)) + "] [" + entry.thread + "] ");
+                writer.write(MessageFormatter.arrayFormat(entry.format, entry.args).getMessage());
+                writer.write(System.lineSeparator());
+            }
+        }
+        return file;
+    }
+
+    /**
+     * @return 缓冲区中的记录数
+     */
+    public static int size() {
+        return (int) Math.min(NEXT.get(), CAPACITY);
+    }
+
+    // 只保存格式和参数，导出时才格式化
+    private static void record(String format, Object[] args) {
+        long index = NEXT.getAndIncrement();
+        BUFFER.set((int) (index % CAPACITY), new Entry(format, args));
+    }
+}
@@ -0,0 +1,33 @@
+package com.trator.chatranslator.diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * 一次翻译接口请求，包括DNS、连接、TLS和等待响应的时间
+ */
+@Name("chatranslator.HttpExchange")
+@Label("Translation HTTP Exchange")
+@Category({"Chat Translator", "Network"})
+@Description("向翻译接口发出请求到收到结果的时间")
+public class HttpExchangeEvent extends jdk.jfr.Event {
+    @Label("Message Id")
+    public long messageId;
+
+    @Label("Provider")
+    public String provider;
+
+    @Label("Texts")
+    public int textCount;
+
+    @Label("Request Length")
+    public int requestLength;
+
+    @Label("Response Length")
+    public int responseLength;
+
+    @Label("Success")
+    public boolean success;
+}
@@ -0,0 +1,24 @@
+package com.trator.chatranslator.diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * 收到一条聊天消息并判断是否需要翻译
+ */
+@Name("chatranslator.MessageClassified")
+@Label("Message Classified")
+@Category({"Chat Translator", "Listener"})
+@Description("监听器判断一条收到的消息是否需要翻译所用的时间")
+public class MessageClassifiedEvent extends jdk.jfr.Event {
+    @Label("Handler")
+    public String handler;
+
+    @Label("Outcome")
+    public String outcome;
+
+    @Label("Message Length")
+    public int messageLength;
+}
@@ -0,0 +1,32 @@
+package com.trator.chatranslator.diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * 翻译请求进入或离开队列
+ */
+@Name("chatranslator.Queue")
+@Label("Translation Queue")
+@Category({"Chat Translator", "Queue"})
+@Description("翻译请求入队、出队或被丢弃")
+public class QueueEvent extends jdk.jfr.Event {
+    @Label("Message Id")
+    public long messageId;
+
+    @Label("Action")
+    public String action;
+
+    @Label("Message Length")
+    public int messageLength;
+
+    @Label("Queue Size")
+    public int queueSize;
+
+    @Label("Time In Queue")
+    @Timespan(Timespan.MILLISECONDS)
+    public long waitedMillis;
+}
@@ -0,0 +1,21 @@
+package com.trator.chatranslator.diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * 为满足翻译接口的请求间隔而等待
+ */
+@Name("chatranslator.RateLimitWait")
+@Label("Rate Limit Wait")
+@Category({"Chat Translator", "Network"})
+@Description("调用翻译接口前为满足请求间隔而等待的时间")
+public class RateLimitWaitEvent extends jdk.jfr.Event {
+    @Label("Message Id")
+    public long messageId;
+
+    @Label("Provider")
+    public String provider;
+}
@@ -0,0 +1,42 @@
+package com.trator.chatranslator.mixin;
+
+import com.trator.chatranslator.cache.WorldTextCache;
+import net.minecraft.client.gui.DrawContext;
+import net.minecraft.client.gui.screen.ingame.BookScreen;
+import net.minecraft.text.StringVisitable;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.Unique;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.Redirect;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+/**
+ * 书页的翻译
+ * 原版只在翻页（cachedPageIndex 变化）时重新排版当前页，这里在取页内容时替换成翻译，
+ * 翻译缓存的代数变化时重置 cachedPageIndex，让当前页重新排版一次
+ */
+@Mixin(BookScreen.class)
+public abstract class BookScreenMixin {
+    @Shadow
+    private int cachedPageIndex;
+
+    @Unique
+    private int chatranslator$generation = -1;
+
+    @Inject(method = "render", at = @At("HEAD"))
+    private void chatranslator$invalidate(DrawContext context, int mouseX, int mouseY, float delta, CallbackInfo ci) {
+        int generation = WorldTextCache.generation();
+        if (chatranslator$generation != generation) {
+            chatranslator$generation = generation;
+            cachedPageIndex = -1;
+        }
+    }
+
+    @Redirect(method = "render",
+            at = @At(value = "INVOKE", target = "Lnet/minecraft/client/gui/screen/ingame/BookScreen$Contents;getPage(I)Lnet/minecraft/text/StringVisitable;"))
+    private StringVisitable chatranslator$translate(BookScreen.Contents contents, int index) {
+        return WorldTextCache.lookup(contents.getPage(index));
+    }
+}
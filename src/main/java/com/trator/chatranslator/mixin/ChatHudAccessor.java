@@ -0,0 +1,21 @@
+package com.trator.chatranslator.mixin;
+
+import net.minecraft.client.gui.hud.ChatHud;
+import net.minecraft.client.gui.hud.ChatHudLine;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.gen.Accessor;
+
+import java.util.List;
+
+/**
+ * 读取和替换聊天框中已有的消息（最新的消息在列表开头）
+ */
+@Mixin(ChatHud.class)
+public interface ChatHudAccessor {
+    @Accessor("messages")
+    List<ChatHudLine> chatranslator$getMessages();
+
+    // 换行后的显示行，同样是最新的在开头
+    @Accessor("visibleMessages")
+    List<ChatHudLine.Visible> chatranslator$getVisibleMessages();
+}
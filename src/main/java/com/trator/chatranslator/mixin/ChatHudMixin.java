@@ -0,0 +1,43 @@
+package com.trator.chatranslator.mixin;
+
+import com.trator.chatranslator.ChatMessageListener;
+import com.trator.chatranslator.LazyTranslation;
+import net.minecraft.client.gui.hud.ChatHud;
+import net.minecraft.client.gui.hud.MessageIndicator;
+import net.minecraft.network.message.MessageSignatureData;
+import net.minecraft.text.Style;
+import net.minecraft.text.Text;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.ModifyVariable;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+
+/**
+ * 聊天框的翻译处理
+ * 清空聊天框时取消还没显示的翻译，避免旧消息的译文出现在空的聊天框里；
+ * 按需翻译模式下给写入的消息附上点击事件，悬停时把提示框换成译文
+ */
+@Mixin(ChatHud.class)
+public abstract class ChatHudMixin {
+    @Inject(method = "clear", at = @At("HEAD"))
+    private void chatranslator$onClear(boolean clearHistory, CallbackInfo ci) {
+        // 离开世界时原版也会清空聊天框，日志中的待翻译记录要留到下次进入服务器时继续
+        ChatMessageListener.cancelPending("清空聊天框", true);
+    }
+
+    @ModifyVariable(method = "addMessage(Lnet/minecraft/text/Text;Lnet/minecraft/network/message/MessageSignatureData;Lnet/minecraft/client/gui/hud/MessageIndicator;)V",
+            at = @At("HEAD"), argsOnly = true)
+    private Text chatranslator$decorate(Text message) {
+        return LazyTranslation.decorate(message);
+    }
+
+    @Inject(method = "getTextStyleAt", at = @At("RETURN"), cancellable = true)
+    private void chatranslator$onHover(double x, double y, CallbackInfoReturnable<Style> cir) {
+        Style style = cir.getReturnValue();
+        if (style != null) {
+            cir.setReturnValue(LazyTranslation.onHover(style));
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.trator.chatranslator.mixin;
+
+import com.trator.chatranslator.OutgoingTranslator;
+import net.minecraft.client.gui.screen.ChatScreen;
+import net.minecraft.client.network.ClientPlayNetworkHandler;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.Redirect;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+/**
+ * 发出消息的预翻译
+ * 输入框内容变化时交给 OutgoingTranslator 延迟翻译，发送时换成已经准备好的译文；
+ * 聊天记录中保留玩家输入的原文
+ */
+@Mixin(ChatScreen.class)
+public abstract class ChatScreenMixin {
+    @Inject(method = "onChatFieldUpdate", at = @At("TAIL"))
+    private void chatranslator$onInput(String chatText, CallbackInfo ci) {
+        OutgoingTranslator.onInput(chatText);
+    }
+
+    @Redirect(method = "sendMessage",
+            at = @At(value = "INVOKE", target = "Lnet/minecraft/client/network/ClientPlayNetworkHandler;sendChatMessage(Ljava/lang/String;)V"))
+    private void chatranslator$send(ClientPlayNetworkHandler handler, String message) {
+        handler.sendChatMessage(OutgoingTranslator.takeTranslation(message));
+    }
+
+    @Inject(method = "removed", at = @At("HEAD"))
+    private void chatranslator$onClose(CallbackInfo ci) {
+        OutgoingTranslator.reset();
+    }
+}
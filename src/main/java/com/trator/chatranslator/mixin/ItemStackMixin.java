@@ -0,0 +1,38 @@
+package com.trator.chatranslator.mixin;
+
+import com.trator.chatranslator.cache.WorldTextCache;
+import com.trator.chatranslator.config.ModConfig;
+import net.minecraft.entity.player.PlayerEntity;
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemStack;
+import net.minecraft.item.tooltip.TooltipType;
+import net.minecraft.text.Text;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+
+import java.util.List;
+
+/**
+ * 物品名称和说明的翻译
+ * 原版每帧都会重新生成说明列表，这里只在原列表上替换已有翻译的行，不另外创建列表
+ */
+@Mixin(ItemStack.class)
+public abstract class ItemStackMixin {
+    @Inject(method = "getTooltip", at = @At("RETURN"))
+    private void chatranslator$translate(Item.TooltipContext context, PlayerEntity player, TooltipType type,
+                                         CallbackInfoReturnable<List<Text>> cir) {
+        if (!ModConfig.isWorldTextTranslation()) {
+            return;
+        }
+        List<Text> lines = cir.getReturnValue();
+        for (int i = 0; i < lines.size(); i++) {
+            Text line = lines.get(i);
+            Text translated = WorldTextCache.translateLine(line);
+            if (translated != line) {
+                lines.set(i, translated);
+            }
+        }
+    }
+}
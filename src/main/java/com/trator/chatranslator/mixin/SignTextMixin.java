@@ -0,0 +1,45 @@
+package com.trator.chatranslator.mixin;
+
+import com.trator.chatranslator.cache.WorldTextCache;
+import net.minecraft.block.entity.SignText;
+import net.minecraft.text.OrderedText;
+import net.minecraft.text.Text;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.Unique;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.Redirect;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+
+import java.util.function.Function;
+
+/**
+ * 告示牌文字的翻译
+ * 原版把排版后的文字缓存在 orderedMessages 中，只在缓存为空时重新生成；
+ * 这里在生成时替换成翻译，翻译缓存的代数变化时清空原版缓存，让告示牌重新生成一次
+ */
+@Mixin(SignText.class)
+public abstract class SignTextMixin {
+    @Shadow
+    private OrderedText[] orderedMessages;
+
+    @Unique
+    private int chatranslator$generation = -1;
+
+    @Inject(method = "getOrderedMessages", at = @At("HEAD"))
+    private void chatranslator$invalidate(boolean filtered, Function<Text, OrderedText> messageOrderer,
+                                          CallbackInfoReturnable<OrderedText[]> cir) {
+        int generation = WorldTextCache.generation();
+        if (chatranslator$generation != generation) {
+            chatranslator$generation = generation;
+            orderedMessages = null;
+        }
+    }
+
+    @Redirect(method = "getOrderedMessages",
+            at = @At(value = "INVOKE", target = "Ljava/util/function/Function;apply(Ljava/lang/Object;)Ljava/lang/Object;"))
+    private Object chatranslator$translate(Function<Text, OrderedText> messageOrderer, Object message) {
+        return messageOrderer.apply(WorldTextCache.lookup((Text) message));
+    }
+}
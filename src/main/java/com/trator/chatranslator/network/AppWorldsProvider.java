@@ -0,0 +1,157 @@
+package com.trator.chatranslator.network;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.trator.chatranslator.diagnostics.DiagnosticLog;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 公共免费翻译接口，免费用户每次请求之间至少间隔2秒，且不支持并发，只能翻译成简体中文
+ */
+public class AppWorldsProvider implements TranslationProvider {
+    public static final String NAME = "appworlds";
+    // 接口唯一支持的目标语言
+    public static final String TARGET_LANGUAGE = "zh-CN";
+
+    private static final String API_URL = "https://translate.appworlds.cn";
+    private static final Gson GSON = new Gson();
+    private static final long MIN_REQUEST_INTERVAL = 2000; // 2秒(免费用户限制)
+    // 批量翻译时每次请求的原文总长度上限，避免URL过长
+    private static final int MAX_BATCH_LENGTH = 1500;
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public String translate(String text, String sourceLanguage, String targetLanguage) throws Exception {
+        if (text == null || text.trim().isEmpty()) {
+            return text;
+        }
+
+        // 不能把中文当成其他语言的译文返回
+        if (!supportsTargetLanguage(targetLanguage)) {
+            throw new Exception("something went wrong: unsupported target language " + targetLanguage);
+        }
+
+        // 编码参数
+        String encodedText = URLEncoder.encode(text, StandardCharsets.UTF_8.toString());
+        String requestUrl = String.format("%s?text=%s&from=%s&to=%s",
+                API_URL, encodedText, sourceLanguage, targetLanguage);
+
+        DiagnosticLog.trace("post:{}", requestUrl);
+
+        URL url = new URL(requestUrl);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod("GET");
+        connection.setConnectTimeout(5000);
+        connection.setReadTimeout(5000);
+
+        int responseCode = connection.getResponseCode();
+        if (responseCode == HttpURLConnection.HTTP_OK) {
+            BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
+            StringBuilder response = new StringBuilder();
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+                response.append(line);
+            }
+            reader.close();
+
+            String responseStr = response.toString();
+            DiagnosticLog.trace("API:{}", responseStr);
+
+            JsonObject jsonResponse = GSON.fromJson(responseStr, JsonObject.class);
+            int code = jsonResponse.get("code").getAsInt();
+
+            if (code == 200) {
+                return jsonResponse.get("data").getAsString();
+            } else {
+                String errorMsg = jsonResponse.get("msg").getAsString();
+                DiagnosticLog.trace("something went wrong: {}", errorMsg);
+                return "something went wrong: " + errorMsg;
+            }
+        } else {
+            throw new Exception("something went wrong: " + responseCode);
+        }
+    }
+
+    /**
+     * 把多条文本用换行连接后一次请求翻译，再按行拆分结果；
+     * 文本过长时分成几次请求，每次之间仍遵守免费用户的请求间隔
+     */
+    @Override
+    public List<String> translateBatch(List<String> texts, String sourceLanguage, String targetLanguage) throws Exception {
+        List<String> results = new ArrayList<>(texts.size());
+        List<String> chunk = new ArrayList<>();
+        int chunkLength = 0;
+        for (String text : texts) {
+            // 文本本身的换行会打乱拆分，替换为空格
+            String line = text.replace('\n', ' ');
+            if (!chunk.isEmpty() && chunkLength + line.length() > MAX_BATCH_LENGTH) {
+                results.addAll(translateChunk(chunk, sourceLanguage, targetLanguage));
+                chunk.clear();
+                chunkLength = 0;
+                Thread.sleep(MIN_REQUEST_INTERVAL);
+            }
+            chunk.add(line);
+            chunkLength += line.length() + 1;
+        }
+        if (!chunk.isEmpty()) {
+            results.addAll(translateChunk(chunk, sourceLanguage, targetLanguage));
+        }
+        return results;
+    }
+
+    private List<String> translateChunk(List<String> lines, String sourceLanguage, String targetLanguage) throws Exception {
+        if (lines.size() == 1) {
+            return List.of(translate(lines.get(0), sourceLanguage, targetLanguage));
+        }
+        String translated = translate(String.join("\n", lines), sourceLanguage, targetLanguage);
+        String[] parts = translated.split("\n", -1);
+        if (parts.length != lines.size()) {
+            throw new Exception("something went wrong: expected " + lines.size() + " lines, got " + parts.length);
+        }
+        List<String> results = new ArrayList<>(parts.length);
+        for (String part : parts) {
+            results.add(part.trim());
+        }
+        return results;
+    }
+
+    @Override
+    public void warmUp() throws Exception {
+        // HttpURLConnection 会复用 keep-alive 连接，预先请求一次即可完成DNS解析和TLS握手
+        HttpURLConnection connection = (HttpURLConnection) new URL(API_URL).openConnection();
+        connection.setRequestMethod("HEAD");
+        connection.setConnectTimeout(5000);
+        connection.setReadTimeout(5000);
+        connection.getResponseCode();
+        connection.getInputStream().close();
+    }
+
+    @Override
+    public boolean supportsTargetLanguage(String targetLanguage) {
+        return TARGET_LANGUAGE.equals(targetLanguage);
+    }
+
+    @Override
+    public long getMinRequestInterval() {
+        return MIN_REQUEST_INTERVAL;
+    }
+
+    @Override
+    public int getMaxConcurrentRequests() {
+        return 1;
+    }
+}
@@ -0,0 +1,69 @@
+package com.trator.chatranslator.network;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 翻译请求的取消标记
+ * 关闭翻译、修改目标语言、重置配置或清空聊天框时取消，已排队的消息不再翻译，
+ * 正在进行的请求被中断，结果也不会再显示
+ */
+public class CancellationToken {
+    /**
+     * 永远不会取消的标记，用于不需要取消的调用方
+     */
+    public static final CancellationToken NONE = new CancellationToken();
+
+    private volatile boolean cancelled;
+    private final List<Runnable> callbacks = new ArrayList<>();
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * 取消并执行所有已登记的回调，重复调用无效
+     */
+    public void cancel() {
+        if (this == NONE) {
+            return;
+        }
+        List<Runnable> toRun;
+        synchronized (callbacks) {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            toRun = new ArrayList<>(callbacks);
+            callbacks.clear();
+        }
+        for (Runnable callback : toRun) {
+            callback.run();
+        }
+    }
+
+    /**
+     * 登记取消时执行的回调，已经取消时立即执行
+     */
+    public void onCancel(Runnable callback) {
+        if (this == NONE) {
+            return;
+        }
+        synchronized (callbacks) {
+            if (!cancelled) {
+                callbacks.add(callback);
+                return;
+            }
+        }
+        callback.run();
+    }
+
+    /**
+     * 请求结束后移除回调
+     */
+    public void remove(Runnable callback) {
+        synchronized (callbacks) {
+            callbacks.remove(callback);
+        }
+    }
+}
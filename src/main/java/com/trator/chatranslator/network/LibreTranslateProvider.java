@@ -0,0 +1,155 @@
+package com.trator.chatranslator.network;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.trator.chatranslator.diagnostics.DiagnosticLog;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 自建的 LibreTranslate 兼容接口（POST /translate）
+ * 一般部署在局域网内，没有频率限制，支持并发请求和批量翻译
+ */
+public class LibreTranslateProvider implements TranslationProvider {
+    public static final String NAME = "libretranslate";
+
+    private static final Gson GSON = new Gson();
+
+    private final String baseUrl;
+    private final String apiKey;
+    private final int maxConcurrentRequests;
+    private final HttpClient httpClient;
+
+    public LibreTranslateProvider(String baseUrl, String apiKey, int maxConcurrentRequests) {
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+        this.apiKey = apiKey;
+        this.maxConcurrentRequests = Math.max(1, maxConcurrentRequests);
+        // HttpClient 内部维护连接池，同一个实例可以被多个线程同时使用
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(2))
+                .build();
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public String translate(String text, String sourceLanguage, String targetLanguage) throws Exception {
+        if (text == null || text.trim().isEmpty()) {
+            return text;
+        }
+
+        JsonObject body = createRequestBody(sourceLanguage, targetLanguage);
+        body.addProperty("q", text);
+
+        JsonElement translated = post(body).get("translatedText");
+        return translated.getAsString();
+    }
+
+    @Override
+    public List<String> translateBatch(List<String> texts, String sourceLanguage, String targetLanguage) throws Exception {
+        if (texts.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        // LibreTranslate 的 q 字段可以是数组，一次请求翻译多条
+        JsonArray q = new JsonArray();
+        for (String text : texts) {
+            q.add(text);
+        }
+        JsonObject body = createRequestBody(sourceLanguage, targetLanguage);
+        body.add("q", q);
+
+        JsonArray translated = post(body).getAsJsonArray("translatedText");
+        List<String> results = new ArrayList<>(translated.size());
+        for (JsonElement element : translated) {
+            results.add(element.getAsString());
+        }
+        if (results.size() != texts.size()) {
+            throw new Exception("something went wrong: batch size mismatch " + results.size() + "/" + texts.size());
+        }
+        return results;
+    }
+
+    @Override
+    public void warmUp() throws Exception {
+        // 请求一次语言列表，让连接池里保留一条已建立的连接
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/languages"))
+                .timeout(Duration.ofSeconds(5))
+                .GET()
+                .build();
+        httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+    }
+
+    @Override
+    public void close() {
+        // 不再接受新请求，连接池里的空闲连接随之关闭
+        httpClient.shutdown();
+    }
+
+    @Override
+    public long getMinRequestInterval() {
+        return 0;
+    }
+
+    @Override
+    public int getMaxConcurrentRequests() {
+        return maxConcurrentRequests;
+    }
+
+    private JsonObject createRequestBody(String sourceLanguage, String targetLanguage) {
+        JsonObject body = new JsonObject();
+        body.addProperty("source", toLibreLanguage(sourceLanguage));
+        body.addProperty("target", toLibreLanguage(targetLanguage));
+        body.addProperty("format", "text");
+        if (apiKey != null && !apiKey.isEmpty()) {
+            body.addProperty("api_key", apiKey);
+        }
+        return body;
+    }
+
+    private JsonObject post(JsonObject body) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/translate"))
+                .timeout(Duration.ofSeconds(5))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(GSON.toJson(body), StandardCharsets.UTF_8))
+                .build();
+
+        HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+        if (response.statusCode() == 429) {
+            throw new RateLimitException("something went wrong: 429");
+        }
+        if (response.statusCode() != 200) {
+            // 每次失败都会发生，只写入诊断记录，由 TranslationService 汇总输出
+            DiagnosticLog.trace("LibreTranslate: {} {}", response.statusCode(), response.body());
+            throw new Exception("something went wrong: " + response.statusCode());
+        }
+
+        JsonObject json = GSON.fromJson(response.body(), JsonObject.class);
+        if (json.has("error")) {
+            throw new Exception("something went wrong: " + json.get("error").getAsString());
+        }
+        return json;
+    }
+
+    // LibreTranslate 使用不带地区的语言代码，例如 zh-CN -> zh
+    private static String toLibreLanguage(String language) {
+        if (language == null || language.isEmpty()) {
+            return "auto";
+        }
+        int dash = language.indexOf('-');
+        return dash > 0 ? language.substring(0, dash) : language;
+    }
+}
@@ -0,0 +1,10 @@
+package com.trator.chatranslator.network;
+
+/**
+ * 翻译接口返回了频率限制（例如 HTTP 429），稍后重试可以成功，不属于永久性错误
+ */
+public class RateLimitException extends Exception {
+    public RateLimitException(String message) {
+        super(message);
+    }
+}
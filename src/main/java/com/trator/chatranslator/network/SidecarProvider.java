@@ -0,0 +1,198 @@
+package com.trator.chatranslator.network;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.trator.chatranslator.ChatTranslatorMod;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * 通过本机守护进程翻译（见 {@link SidecarServer}）
+ * 频率限制和缓存都由守护进程负责，客户端只管把请求并发地发过去
+ */
+public class SidecarProvider implements TranslationProvider {
+    public static final String NAME = "sidecar";
+
+    private static final Gson GSON = new Gson();
+    // 守护进程会按真实接口的限制排队，客户端这边允许多个请求同时等待
+    private static final int MAX_CONCURRENT_REQUESTS = 4;
+
+    private final Path socketPath;
+    private final boolean autoStart;
+    private final Supplier<TranslationProvider> backendFactory;
+    private final Predicate<String> supportedTargets;
+    // 空闲连接，每条连接同一时间只处理一个请求
+    private final Queue<Connection> idle = new ConcurrentLinkedQueue<>();
+    // 配置变化换掉本提供方后为 true，之后用完的连接直接关闭
+    private volatile boolean closed;
+
+    private static class Connection {
+        final SocketChannel channel;
+        final BufferedReader reader;
+        final Writer writer;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+            this.reader = new BufferedReader(Channels.newReader(channel, StandardCharsets.UTF_8));
+            this.writer = Channels.newWriter(channel, StandardCharsets.UTF_8);
+        }
+
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // 忽略
+            }
+        }
+    }
+
+    /**
+     * @param socketPath 守护进程的套接字路径
+     * @param autoStart 连接不上时是否在本进程内启动守护进程
+     * @param backendFactory 在本进程内启动守护进程时使用的真实翻译接口
+     * @param supportedTargets 守护进程背后的翻译接口支持的目标语言，按本机配置判断
+     */
+    public SidecarProvider(Path socketPath, boolean autoStart, Supplier<TranslationProvider> backendFactory,
+                           Predicate<String> supportedTargets) {
+        this.socketPath = socketPath;
+        this.autoStart = autoStart;
+        this.backendFactory = backendFactory;
+        this.supportedTargets = supportedTargets;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public String translate(String text, String sourceLanguage, String targetLanguage) throws Exception {
+        if (text == null || text.trim().isEmpty()) {
+            return text;
+        }
+        return translateBatch(Collections.singletonList(text), sourceLanguage, targetLanguage).get(0);
+    }
+
+    @Override
+    public List<String> translateBatch(List<String> texts, String sourceLanguage, String targetLanguage) throws Exception {
+        if (texts.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        JsonArray array = new JsonArray();
+        for (String text : texts) {
+            array.add(text);
+        }
+        JsonObject request = new JsonObject();
+        request.add("texts", array);
+        request.addProperty("source", sourceLanguage);
+        request.addProperty("target", targetLanguage);
+
+        JsonObject response = exchange(request);
+        if (response.has("rateLimited")) {
+            throw new RateLimitException("something went wrong: " + response.get("error").getAsString());
+        }
+        if (response.has("error")) {
+            throw new Exception("something went wrong: " + response.get("error").getAsString());
+        }
+
+        List<String> results = new ArrayList<>(texts.size());
+        for (JsonElement element : response.getAsJsonArray("results")) {
+            results.add(element.isJsonNull() ? null : element.getAsString());
+        }
+        return results;
+    }
+
+    @Override
+    public void warmUp() throws Exception {
+        // 建立一条连接放回空闲队列，需要时会顺便启动守护进程
+        release(openConnection());
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        Connection connection;
+        while ((connection = idle.poll()) != null) {
+            connection.close();
+        }
+    }
+
+    @Override
+    public boolean supportsTargetLanguage(String targetLanguage) {
+        return supportedTargets.test(targetLanguage);
+    }
+
+    @Override
+    public long getMinRequestInterval() {
+        return 0;
+    }
+
+    @Override
+    public int getMaxConcurrentRequests() {
+        return MAX_CONCURRENT_REQUESTS;
+    }
+
+    private JsonObject exchange(JsonObject request) throws Exception {
+        Connection connection = idle.poll();
+        if (connection == null) {
+            connection = openConnection();
+        }
+
+        try {
+            connection.writer.write(GSON.toJson(request));
+            connection.writer.write('\n');
+            connection.writer.flush();
+
+            String line = connection.reader.readLine();
+            if (line == null) {
+                throw new IOException("sidecar closed the connection");
+            }
+            release(connection);
+            return GSON.fromJson(line, JsonObject.class);
+        } catch (Exception e) {
+            connection.close();
+            throw e;
+        }
+    }
+
+    // 放回空闲队列；本提供方已关闭时不再保留连接
+    private void release(Connection connection) {
+        idle.add(connection);
+        if (closed) {
+            close();
+        }
+    }
+
+    private Connection openConnection() throws IOException {
+        SidecarServer.checkSocketPath(socketPath);
+        try {
+            return new Connection(SocketChannel.open(UnixDomainSocketAddress.of(socketPath)));
+        } catch (IOException e) {
+            if (!autoStart) {
+                throw e;
+            }
+            ChatTranslatorMod.LOGGER.info("translation sidecar not running, starting one: {}", socketPath);
+            SidecarServer.startInProcess(socketPath, backendFactory.get());
+            SidecarServer.checkSocketPath(socketPath);
+            // 不论是本进程还是别的客户端抢先启动，现在都应该能连上
+            return new Connection(SocketChannel.open(UnixDomainSocketAddress.of(socketPath)));
+        }
+    }
+}
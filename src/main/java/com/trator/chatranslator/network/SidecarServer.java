@@ -0,0 +1,325 @@
+package com.trator.chatranslator.network;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.trator.chatranslator.ChatTranslatorMod;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * 本机共享的翻译守护进程
+ * 同一台机器上的多个游戏客户端通过 Unix 域套接字连接到同一个守护进程，
+ * 由它统一持有翻译接口的连接、频率限制和缓存，所有客户端共用一份API额度
+ *
+ * 协议为每行一个 JSON：
+ * 请求 {"texts": [...], "source": "auto", "target": "zh-CN"}
+ * 响应 {"results": [...]} 或 {"error": "..."}
+ */
+public class SidecarServer {
+    private static final Gson GSON = new Gson();
+    private static final int MAX_CACHE_ENTRIES = 20000;
+
+    // 当前进程内启动的守护进程（auto 模式下由第一个客户端启动）
+    private static SidecarServer inProcess;
+
+    private final Path socketPath;
+    private final TranslationProvider backend;
+    private final Semaphore concurrency;
+    private final ExecutorService workers;
+    private final Object rateLock = new Object();
+    private long lastRequestTime = 0;
+
+    // 所有客户端共用的LRU缓存，键为 目标语言 + '\0' + 原文
+    private final Map<String, String> cache = new LinkedHashMap<String, String>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > MAX_CACHE_ENTRIES;
+        }
+    };
+
+    private ServerSocketChannel serverChannel;
+    private volatile boolean running;
+
+    public SidecarServer(Path socketPath, TranslationProvider backend) {
+        this.socketPath = socketPath;
+        this.backend = backend;
+        this.concurrency = new Semaphore(Math.max(1, backend.getMaxConcurrentRequests()));
+        this.workers = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "chatranslator-sidecar-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 独立运行守护进程
+     * 用法: SidecarServer <socket> [appworlds|libretranslate] [LibreTranslate地址] [并发数]
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("usage: SidecarServer <socket> [appworlds|libretranslate] [libreTranslateUrl] [concurrency]");
+            System.exit(1);
+        }
+
+        TranslationProvider backend;
+        if (args.length >= 3 && LibreTranslateProvider.NAME.equals(args[1])) {
+            int maxConcurrent = args.length >= 4 ? Integer.parseInt(args[3]) : 8;
+            backend = new LibreTranslateProvider(args[2], "", maxConcurrent);
+        } else {
+            backend = new AppWorldsProvider();
+        }
+
+        SidecarServer server = new SidecarServer(Paths.get(args[0]), backend);
+        server.start(false);
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+        System.out.println("sidecar listening on " + args[0] + " (" + backend.getName() + ")");
+    }
+
+    /**
+     * 在当前进程内启动守护进程，套接字已被其他进程占用时什么也不做
+     * @return 是否由本进程启动
+     */
+    public static synchronized boolean startInProcess(Path socketPath, TranslationProvider backend) {
+        if (inProcess != null) {
+            return true;
+        }
+
+        try {
+            checkSocketPath(socketPath);
+            if (Files.exists(socketPath)) {
+                if (isAlive(socketPath)) {
+                    return false;
+                }
+                // 上一个守护进程异常退出留下的套接字文件
+                Files.deleteIfExists(socketPath);
+            }
+
+            SidecarServer server = new SidecarServer(socketPath, backend);
+            server.start(true);
+            Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+            inProcess = server;
+            ChatTranslatorMod.LOGGER.info("translation sidecar started: {}", socketPath);
+            return true;
+        } catch (IOException e) {
+            // 多个客户端同时启动时，只有一个能绑定成功
+            ChatTranslatorMod.LOGGER.warn("failed to start translation sidecar: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 绑定套接字并开始接受连接
+     * @param daemon 是否使用守护线程（在游戏进程内运行时为 true，不阻止游戏退出）
+     */
+    public synchronized void start(boolean daemon) throws IOException {
+        checkSocketPath(socketPath);
+        serverChannel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        serverChannel.bind(UnixDomainSocketAddress.of(socketPath));
+        running = true;
+
+        Thread acceptThread = new Thread(this::acceptLoop, "chatranslator-sidecar");
+        acceptThread.setDaemon(daemon);
+        acceptThread.start();
+
+        // 守护进程启动时就预热翻译接口，第一个客户端不必等待握手
+        workers.execute(() -> {
+            try {
+                backend.warmUp();
+            } catch (Exception e) {
+                ChatTranslatorMod.LOGGER.warn("failed to warm up sidecar backend: {}", e.getMessage());
+            }
+        });
+    }
+
+    public synchronized void stop() {
+        running = false;
+        try {
+            if (serverChannel != null) {
+                serverChannel.close();
+            }
+            Files.deleteIfExists(socketPath);
+        } catch (IOException e) {
+            ChatTranslatorMod.LOGGER.warn("failed to stop translation sidecar: {}", e.getMessage());
+        }
+        workers.shutdownNow();
+    }
+
+    /**
+     * 连接或绑定套接字之前检查所在目录：不存在时创建为只有当前用户能访问（0700），
+     * 目录或已有的套接字文件属于其他用户、或其他用户可以写入目录时拒绝使用，
+     * 防止同一台机器的其他用户抢先创建套接字，读到或篡改聊天内容
+     */
+    static void checkSocketPath(Path socketPath) throws IOException {
+        Path parent = socketPath.toAbsolutePath().getParent();
+        boolean posix = parent.getFileSystem().supportedFileAttributeViews().contains("posix");
+        if (!Files.isDirectory(parent)) {
+            if (posix) {
+                Files.createDirectories(parent, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+            } else {
+                Files.createDirectories(parent);
+            }
+        }
+        if (!posix) {
+            // Windows 的临时目录本来就按用户区分
+            return;
+        }
+
+        UserPrincipal currentUser = parent.getFileSystem().getUserPrincipalLookupService()
+                .lookupPrincipalByName(System.getProperty("user.name"));
+        if (!currentUser.equals(Files.getOwner(parent))) {
+            throw new IOException("sidecar socket directory " + parent + " is not owned by the current user");
+        }
+        Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(parent);
+        if (permissions.contains(PosixFilePermission.GROUP_WRITE) || permissions.contains(PosixFilePermission.OTHERS_WRITE)) {
+            throw new IOException("sidecar socket directory " + parent + " is writable by other users");
+        }
+        if (Files.exists(socketPath, LinkOption.NOFOLLOW_LINKS)
+                && !currentUser.equals(Files.getOwner(socketPath, LinkOption.NOFOLLOW_LINKS))) {
+            throw new IOException("sidecar socket " + socketPath + " is not owned by the current user");
+        }
+    }
+
+    // 能连上说明已经有守护进程在运行
+    private static boolean isAlive(Path socketPath) {
+        try (SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress.of(socketPath))) {
+            return channel.isConnected();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                SocketChannel client = serverChannel.accept();
+                workers.execute(() -> serve(client));
+            } catch (IOException e) {
+                if (running) {
+                    ChatTranslatorMod.LOGGER.warn("sidecar accept failed: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    // 每个连接上的请求按顺序处理，客户端需要并发时会建立多条连接
+    private void serve(SocketChannel client) {
+        try (SocketChannel channel = client) {
+            BufferedReader reader = new BufferedReader(Channels.newReader(channel, StandardCharsets.UTF_8));
+            Writer writer = Channels.newWriter(channel, StandardCharsets.UTF_8);
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                JsonObject response = new JsonObject();
+                try {
+                    JsonObject request = GSON.fromJson(line, JsonObject.class);
+                    List<String> texts = new ArrayList<>();
+                    for (JsonElement element : request.getAsJsonArray("texts")) {
+                        texts.add(element.getAsString());
+                    }
+
+                    JsonArray results = new JsonArray();
+                    for (String result : translate(texts,
+                            request.get("source").getAsString(), request.get("target").getAsString())) {
+                        results.add(result);
+                    }
+                    response.add("results", results);
+                } catch (Exception e) {
+                    response.addProperty("error", String.valueOf(e.getMessage()));
+                    // 客户端据此区分可以重试的频率限制和其他错误
+                    if (e instanceof RateLimitException) {
+                        response.addProperty("rateLimited", true);
+                    }
+                }
+
+                writer.write(GSON.toJson(response));
+                writer.write('\n');
+                writer.flush();
+            }
+        } catch (IOException e) {
+            // 客户端断开
+        }
+    }
+
+    // 先查共享缓存，只把未命中的文本交给翻译接口
+    private List<String> translate(List<String> texts, String sourceLanguage, String targetLanguage) throws Exception {
+        List<String> results = new ArrayList<>(texts.size());
+        List<String> misses = new ArrayList<>();
+        synchronized (cache) {
+            for (String text : texts) {
+                String cached = cache.get(targetLanguage + '\0' + text);
+                results.add(cached);
+                if (cached == null) {
+                    misses.add(text);
+                }
+            }
+        }
+        if (misses.isEmpty()) {
+            return results;
+        }
+
+        List<String> translated = callBackend(misses, sourceLanguage, targetLanguage);
+        int next = 0;
+        synchronized (cache) {
+            for (int i = 0; i < results.size(); i++) {
+                if (results.get(i) == null) {
+                    String result = translated.get(next++);
+                    results.set(i, result);
+                    if (!TranslationService.isErrorResult(result)) {
+                        cache.put(targetLanguage + '\0' + texts.get(i), result);
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    // 与 TranslationService 相同：有间隔限制的接口串行执行，否则按接口允许的并发数执行
+    private List<String> callBackend(List<String> texts, String sourceLanguage, String targetLanguage) throws Exception {
+        long interval = backend.getMinRequestInterval();
+        if (interval <= 0) {
+            concurrency.acquire();
+            try {
+                return backend.translateBatch(texts, sourceLanguage, targetLanguage);
+            } finally {
+                concurrency.release();
+            }
+        }
+
+        synchronized (rateLock) {
+            long timeSinceLastRequest = System.currentTimeMillis() - lastRequestTime;
+            if (timeSinceLastRequest < interval) {
+                Thread.sleep(interval - timeSinceLastRequest);
+            }
+            try {
+                return backend.translateBatch(texts, sourceLanguage, targetLanguage);
+            } finally {
+                lastRequestTime = System.currentTimeMillis();
+            }
+        }
+    }
+}
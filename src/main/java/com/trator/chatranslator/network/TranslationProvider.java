@@ -0,0 +1,67 @@
+package com.trator.chatranslator.network;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 翻译服务提供方
+ * 不同的翻译接口在请求间隔、并发能力和批量支持上差别很大，由实现类自行声明
+ */
+public interface TranslationProvider {
+
+    /**
+     * @return 提供方名称，与配置中的 translationProvider 对应
+     */
+    String getName();
+
+    /**
+     * 同步翻译单条文本
+     * @param text 需要翻译的文本
+     * @param sourceLanguage 源语言代码（可以为 auto）
+     * @param targetLanguage 目标语言代码
+     * @return 翻译后的文本
+     */
+    String translate(String text, String sourceLanguage, String targetLanguage) throws Exception;
+
+    /**
+     * 批量翻译，默认逐条调用 {@link #translate}
+     * @return 与输入顺序一一对应的翻译结果
+     */
+    default List<String> translateBatch(List<String> texts, String sourceLanguage, String targetLanguage) throws Exception {
+        List<String> results = new ArrayList<>(texts.size());
+        for (String text : texts) {
+            results.add(translate(text, sourceLanguage, targetLanguage));
+        }
+        return results;
+    }
+
+    /**
+     * 提供方不支持的目标语言不会发出请求，结果也不会以该语言写入缓存
+     * @return 能否翻译成指定的目标语言
+     */
+    default boolean supportsTargetLanguage(String targetLanguage) {
+        return true;
+    }
+
+    /**
+     * 提前解析域名并建立连接，使第一次翻译不必承担DNS和TLS握手的延迟
+     */
+    default void warmUp() throws Exception {
+    }
+
+    /**
+     * 配置变化换用新的提供方时调用，释放空闲连接等资源；正在进行的请求仍可完成
+     */
+    default void close() {
+    }
+
+    /**
+     * @return 两次请求之间的最小间隔（毫秒），0 表示不限制
+     */
+    long getMinRequestInterval();
+
+    /**
+     * @return 允许同时进行的请求数
+     */
+    int getMaxConcurrentRequests();
+}
@@ -1,121 +1,441 @@
 package com.trator.chatranslator.network;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
 import com.trator.chatranslator.ChatTranslatorMod;
+import com.trator.chatranslator.cache.TranslationCache;
 import com.trator.chatranslator.config.ModConfig;
+import com.trator.chatranslator.diagnostics.DiagnosticLog;
+import com.trator.chatranslator.diagnostics.HttpExchangeEvent;
+import com.trator.chatranslator.diagnostics.RateLimitWaitEvent;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.net.URLEncoder;
-import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
 
 public class TranslationService {
-    private static final String API_URL = "https://translate.appworlds.cn";
-    private static final Gson GSON = new Gson();
-    private static final Executor EXECUTOR = Executors.newSingleThreadExecutor();
-    
-    // 用于限制API调用频率的时间戳
-    private static long lastRequestTime = 0;
-    private static final long MIN_REQUEST_INTERVAL = 2000; // 2秒(免费用户限制)
-    
+    // 每个请求一个虚拟线程，等待间隔和网络I/O时不占用平台线程；并发数由下面的信号量限制
+    // 放在内部类中，第一次翻译时才创建
+    private static class ExecutorHolder {
+        static final Executor EXECUTOR = Executors.newThreadPerTaskExecutor(
+                Thread.ofVirtual().name("chatranslator-translate-", 0).factory());
+    }
+
+    // 频率限制时返回的结果，和接口自己返回的频率限制信息一样由 isRateLimited 识别
+    private static final String RATE_LIMITED_RESULT = "something went wrong: rate limited";
+
+    // 用于限制API调用频率的时间戳，在 RATE_LOCK 内更新，其他线程也可以无锁读取
+    private static final AtomicLong lastRequestTime = new AtomicLong();
+    // 虚拟线程在 synchronized 中休眠会占住平台线程，因此使用 ReentrantLock
+    private static final ReentrantLock RATE_LOCK = new ReentrantLock();
+
+    // 当前提供方的并发名额，提供方或配置的上限变化时重新创建
+    private static Semaphore permits;
+    private static TranslationProvider permitsProvider;
+    private static int permitsLimit;
+
+    private static TranslationProvider provider;
+    private static String providerKey;
+
+    // 离线回放工具替换的提供方、执行器和时钟，游戏中始终使用配置的接口、虚拟线程和系统时间
+    private static volatile TranslationProvider replayProvider;
+    private static volatile Executor replayExecutor;
+    private static volatile LongSupplier clock = System::currentTimeMillis;
+
+    /**
+     * 使用指定的提供方、执行器和时钟代替配置的接口、虚拟线程和系统时间，
+     * 离线回放工具用来在虚拟时钟上驱动与游戏中相同的翻译流程
+     */
+    public static synchronized void useReplayEnvironment(TranslationProvider provider, Executor executor, LongSupplier time) {
+        replayProvider = provider;
+        replayExecutor = executor;
+        clock = time;
+    }
+
+    /**
+     * @return 翻译流程使用的当前时间（毫秒），离线回放时为虚拟时间
+     */
+    public static long currentTimeMillis() {
+        return clock.getAsLong();
+    }
+
+    private static Executor executor() {
+        Executor executor = replayExecutor;
+        return executor != null ? executor : ExecutorHolder.EXECUTOR;
+    }
+
+    /**
+     * 获取当前配置对应的翻译提供方，配置变化时重新创建
+     */
+    public static synchronized TranslationProvider getProvider() {
+        if (replayProvider != null) {
+            return replayProvider;
+        }
+        String key = ModConfig.getTranslationProvider() + "|" + ModConfig.getLibreTranslateUrl() + "|"
+                + ModConfig.getLibreTranslateApiKey() + "|" + ModConfig.getLibreTranslateMaxConcurrency() + "|"
+                + ModConfig.getSidecarMode() + "|" + ModConfig.getSidecarSocket();
+        if (provider == null || !key.equals(providerKey)) {
+            TranslationProvider previous = provider;
+            String sidecarMode = ModConfig.getSidecarMode();
+            if (ModConfig.SIDECAR_CONNECT.equals(sidecarMode) || ModConfig.SIDECAR_AUTO.equals(sidecarMode)) {
+                // 频率限制和缓存交给本机守护进程，多个客户端共用
+                provider = new SidecarProvider(Paths.get(ModConfig.getSidecarSocket()),
+                        ModConfig.SIDECAR_AUTO.equals(sidecarMode), TranslationService::createBackendProvider,
+                        language -> !AppWorldsProvider.NAME.equals(ModConfig.getTranslationProvider())
+                                || AppWorldsProvider.TARGET_LANGUAGE.equals(language));
+            } else {
+                provider = createBackendProvider();
+            }
+            providerKey = key;
+            if (previous != null) {
+                previous.close();
+            }
+            ChatTranslatorMod.LOGGER.info("translation provider: {}", provider.getName());
+        }
+        return provider;
+    }
+
+    /**
+     * 按配置创建直接访问翻译接口的提供方（不经过守护进程）
+     */
+    public static TranslationProvider createBackendProvider() {
+        if (LibreTranslateProvider.NAME.equals(ModConfig.getTranslationProvider())) {
+            return new LibreTranslateProvider(ModConfig.getLibreTranslateUrl(),
+                    ModConfig.getLibreTranslateApiKey(), ModConfig.getLibreTranslateMaxConcurrency());
+        }
+        return new AppWorldsProvider();
+    }
+
     /**
      * 异步翻译文本
      * @param text 需要翻译的文本
      * @return 包含翻译结果的CompletableFuture
      */
     public static CompletableFuture<String> translateAsync(String text) {
+        return translateAsync(text, 0);
+    }
+
+    /**
+     * 异步翻译文本
+     * @param text 需要翻译的文本
+     * @param messageId 翻译请求编号，用于关联JFR事件
+     * @return 包含翻译结果的CompletableFuture
+     */
+    public static CompletableFuture<String> translateAsync(String text, long messageId) {
+        return translateAsync(text, messageId, ModConfig.getSourceLanguage());
+    }
+
+    /**
+     * 异步翻译文本，使用指定的源语言
+     * @param text 需要翻译的文本
+     * @param messageId 翻译请求编号，用于关联JFR事件
+     * @param sourceLanguage 源语言代码，已知发送者语言时不必让接口自动检测
+     * @return 包含翻译结果的CompletableFuture
+     */
+    public static CompletableFuture<String> translateAsync(String text, long messageId, String sourceLanguage) {
+        return translateAsync(text, messageId, sourceLanguage, ModConfig.getTargetLanguage());
+    }
+
+    /**
+     * 异步翻译文本，使用指定的源语言，可以取消
+     * @param token 取消标记，取消后请求被中断，结果为 null
+     */
+    public static CompletableFuture<String> translateAsync(String text, long messageId, String sourceLanguage,
+                                                           CancellationToken token) {
+        return translateAsync(text, messageId, sourceLanguage, ModConfig.getTargetLanguage(), token);
+    }
+
+    /**
+     * 异步翻译文本，使用指定的源语言和目标语言（服务器为不同客户端翻译时使用）
+     * @param text 需要翻译的文本
+     * @param messageId 翻译请求编号，用于关联JFR事件
+     * @param sourceLanguage 源语言代码
+     * @param targetLanguage 目标语言代码
+     * @return 包含翻译结果的CompletableFuture
+     */
+    public static CompletableFuture<String> translateAsync(String text, long messageId, String sourceLanguage,
+                                                           String targetLanguage) {
+        return translateAsync(text, messageId, sourceLanguage, targetLanguage, CancellationToken.NONE);
+    }
+
+    /**
+     * 异步翻译文本，使用指定的源语言和目标语言，可以取消
+     * @param token 取消标记，取消后请求被中断，结果为 null
+     */
+    public static CompletableFuture<String> translateAsync(String text, long messageId, String sourceLanguage,
+                                                           String targetLanguage, CancellationToken token) {
+        return translateAsync(text, messageId, sourceLanguage, targetLanguage, token, false);
+    }
+
+    /**
+     * 翻译以玩家名义发出的文本：只在原文完全相同时使用缓存，近似命中的译文可能与原意不同
+     */
+    public static CompletableFuture<String> translateOutgoingAsync(String text, String sourceLanguage, String targetLanguage) {
+        return translateAsync(text, 0, sourceLanguage, targetLanguage, CancellationToken.NONE, true);
+    }
+
+    private static CompletableFuture<String> translateAsync(String text, long messageId, String sourceLanguage,
+                                                            String targetLanguage, CancellationToken token,
+                                                            boolean exactCacheOnly) {
+        // 命中缓存时直接返回，不占用翻译线程和API调用次数
+        String cached = text == null ? null
+                : exactCacheOnly ? TranslationCache.getExact(text, targetLanguage) : TranslationCache.get(text, targetLanguage);
+        if (cached != null) {
+            DiagnosticLog.count("cacheHit");
+            return CompletableFuture.completedFuture(cached);
+        }
+
         return CompletableFuture.supplyAsync(() -> {
+            HttpExchangeEvent exchange = new HttpExchangeEvent();
+            // 在 try 之外取得提供方，出错时记录的是实际发出请求的提供方
+            TranslationProvider current = getProvider();
+            // 取消时中断工作线程：等待名额和间隔的休眠立即结束，虚拟线程上阻塞的网络读写会关闭连接
+            Runnable abort = Thread.currentThread()::interrupt;
+            token.onCancel(abort);
             try {
                 if (text == null || text.trim().isEmpty()) {
                     return text;
                 }
-
-                long currentTime = System.currentTimeMillis();
-                long timeSinceLastRequest = currentTime - lastRequestTime;
-                
-                if (timeSinceLastRequest < MIN_REQUEST_INTERVAL) {
-                    Thread.sleep(MIN_REQUEST_INTERVAL - timeSinceLastRequest);
+                if (token.isCancelled()) {
+                    DiagnosticLog.count("cancelled");
+                    return null;
+                }
+                if (!current.supportsTargetLanguage(targetLanguage)) {
+                    DiagnosticLog.count("unsupportedLanguage");
+                    return "something went wrong: " + current.getName() + " cannot translate to " + targetLanguage;
                 }
-                
-                String result = translate(text);
-                lastRequestTime = System.currentTimeMillis();
 
-                ChatTranslatorMod.LOGGER.info("result: [{}] -> [{}]", text, result);
-                
+                String result = executeWithRateLimit(current, messageId, exchange, () ->
+                        current.translate(text, sourceLanguage, targetLanguage));
+                commitExchange(exchange, messageId, current, 1, text.length(),
+                        result == null ? 0 : result.length(), !isErrorResult(result));
+
+                DiagnosticLog.trace("result: [{}] -> [{}]", text, result);
+
+                if (!isErrorResult(result)) {
+                    DiagnosticLog.count("translated");
+                    TranslationCache.put(text, targetLanguage, result);
+                } else {
+                    DiagnosticLog.count("failed");
+                }
                 return result;
             } catch (Exception e) {
-                ChatTranslatorMod.LOGGER.error("something went wrong", e);
+                commitExchange(exchange, messageId, current, 1, text.length(), 0, false);
+                if (token.isCancelled()) {
+                    DiagnosticLog.count("cancelled");
+                    return null;
+                }
+                if (e instanceof RateLimitException) {
+                    DiagnosticLog.count("rateLimited");
+                    DiagnosticLog.trace("rate limited: [{}]", text);
+                    return RATE_LIMITED_RESULT;
+                }
+                DiagnosticLog.count("failed");
+                DiagnosticLog.failure("translate (" + current.getName() + ")", e);
                 return "something went wrong:" + e.getMessage();
+            } finally {
+                token.remove(abort);
+                // 清除可能在请求结束后才到达的中断标记
+                Thread.interrupted();
             }
-        }, EXECUTOR);
+        }, executor());
     }
-    
+
     /**
-     * 同步翻译文本
-     * @param text 需要翻译的文本
-     * @return 翻译后的文本
+     * 异步批量翻译文本，结果与输入顺序一一对应
+     * @param texts 需要翻译的文本列表
+     * @return 包含翻译结果列表的CompletableFuture
+     */
+    public static CompletableFuture<List<String>> translateBatchAsync(List<String> texts) {
+        List<String> copy = new ArrayList<>(texts);
+        return CompletableFuture.supplyAsync(() -> {
+            HttpExchangeEvent exchange = new HttpExchangeEvent();
+            TranslationProvider current = getProvider();
+            try {
+                String targetLanguage = ModConfig.getTargetLanguage();
+                List<String> results = new ArrayList<>(copy.size());
+                List<String> misses = new ArrayList<>();
+                for (String text : copy) {
+                    String cached = TranslationCache.get(text, targetLanguage);
+                    results.add(cached);
+                    if (cached == null) {
+                        misses.add(text);
+                    }
+                }
+                if (misses.isEmpty()) {
+                    return results;
+                }
+
+                if (!current.supportsTargetLanguage(targetLanguage)) {
+                    throw new IllegalStateException(current.getName() + " cannot translate to " + targetLanguage);
+                }
+                // 只把未命中缓存的文本发给提供方
+                List<String> translated = executeWithRateLimit(current, 0, exchange, () ->
+                        current.translateBatch(misses, ModConfig.getSourceLanguage(), targetLanguage));
+                commitExchange(exchange, 0, current, misses.size(), totalLength(misses), totalLength(translated), true);
+                int next = 0;
+                for (int i = 0; i < results.size(); i++) {
+                    if (results.get(i) == null) {
+                        String result = translated.get(next++);
+                        results.set(i, result);
+                        if (!isErrorResult(result)) {
+                            TranslationCache.put(copy.get(i), targetLanguage, result);
+                        }
+                    }
+                }
+                return results;
+            } catch (Exception e) {
+                commitExchange(exchange, 0, current, copy.size(), totalLength(copy), 0, false);
+                DiagnosticLog.count("failed");
+                DiagnosticLog.failure("batch translate (" + current.getName() + ")", e);
+                throw new RuntimeException(e);
+            }
+        }, executor());
+    }
+
+    /**
+     * 在后台预先解析域名并连接翻译接口
+     */
+    public static CompletableFuture<Void> warmUpAsync() {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                getProvider().warmUp();
+                ChatTranslatorMod.LOGGER.info("translation provider warmed up");
+            } catch (Exception e) {
+                ChatTranslatorMod.LOGGER.warn("failed to warm up translation provider: {}", e.getMessage());
+            }
+        }, executor());
+    }
+
+    /**
+     * @return 翻译结果是否是错误信息（不应缓存或显示）
+     */
+    public static boolean isErrorResult(String result) {
+        return result == null || result.contains("免费用户接口访问频率") || result.contains("something went wrong");
+    }
+
+    /**
+     * @return 错误信息是否是频率限制，只有这种错误值得稍后重试；网络错误、HTTP 错误和密钥错误重试也不会成功
+     */
+    public static boolean isRateLimited(String result) {
+        return result != null && (result.contains("免费用户接口访问频率") || result.contains(RATE_LIMITED_RESULT));
+    }
+
+    /**
+     * @return 当前提供方能否翻译成指定的目标语言
+     */
+    public static boolean supportsTargetLanguage(String targetLanguage) {
+        return getProvider().supportsTargetLanguage(targetLanguage);
+    }
+
+    /**
+     * @return 当前提供方要求的请求最小间隔（毫秒）
+     */
+    public static long getRequestInterval() {
+        return getProvider().getMinRequestInterval();
+    }
+
+    /**
+     * @return 同时进行的请求数上限，取提供方允许的并发数和配置的上限中较小的一个
      */
-    private static String translate(String text) throws Exception {
-        if (text == null || text.trim().isEmpty()) {
-            return text;
+    public static int getMaxConcurrentRequests() {
+        return getMaxConcurrentRequests(getProvider());
+    }
+
+    private static int getMaxConcurrentRequests(TranslationProvider current) {
+        return Math.max(1, Math.min(current.getMaxConcurrentRequests(), ModConfig.getMaxInFlightRequests()));
+    }
+
+    private static synchronized Semaphore getPermits(TranslationProvider current) {
+        int limit = getMaxConcurrentRequests(current);
+        if (permits == null || permitsProvider != current || permitsLimit != limit) {
+            // 进行中的请求仍释放到旧的信号量上，不影响新的名额
+            permits = new Semaphore(limit, true);
+            permitsProvider = current;
+            permitsLimit = limit;
+        }
+        return permits;
+    }
+
+    private interface ProviderCall<T> {
+        T call() throws Exception;
+    }
+
+    // 有间隔限制的提供方串行执行并保证间隔，没有限制的在并发名额内同时执行
+    private static <T> T executeWithRateLimit(TranslationProvider current, long messageId,
+                                              HttpExchangeEvent exchange, ProviderCall<T> call) throws Exception {
+        Semaphore semaphore = getPermits(current);
+        semaphore.acquire();
+        try {
+            return executeWithInterval(current, messageId, exchange, call);
+        } finally {
+            semaphore.release();
         }
-        
-        String sourceLanguage = ModConfig.getSourceLanguage();
-        String targetLanguage = ModConfig.getTargetLanguage();
-        
-        // 确保目标语言是中文（如果配置有误）
-        if (!"zh-CN".equals(targetLanguage)) {
-            ChatTranslatorMod.LOGGER.warn("目标语言设置不是中文,已自动调整为中文");
-            targetLanguage = "zh-CN";
+    }
+
+    private static <T> T executeWithInterval(TranslationProvider current, long messageId,
+                                             HttpExchangeEvent exchange, ProviderCall<T> call) throws Exception {
+        long interval = current.getMinRequestInterval();
+        if (interval <= 0) {
+            return timedCall(exchange, call);
         }
-        
-        // 编码参数
-        String encodedText = URLEncoder.encode(text, StandardCharsets.UTF_8.toString());
-        String requestUrl = String.format("%s?text=%s&from=%s&to=%s", 
-                API_URL, encodedText, sourceLanguage, targetLanguage);
-        
-        ChatTranslatorMod.LOGGER.info("post:{}", requestUrl);
-        
-        URL url = new URL(requestUrl);
-        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-        connection.setRequestMethod("GET");
-        connection.setConnectTimeout(5000);
-        connection.setReadTimeout(5000);
-        
-        int responseCode = connection.getResponseCode();
-        if (responseCode == HttpURLConnection.HTTP_OK) {
-            BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
-            StringBuilder response = new StringBuilder();
-            String line;
-            
-            while ((line = reader.readLine()) != null) {
-                response.append(line);
+
+        RATE_LOCK.lockInterruptibly();
+        try {
+            long timeSinceLastRequest = currentTimeMillis() - lastRequestTime.get();
+            if (timeSinceLastRequest < interval) {
+                RateLimitWaitEvent wait = new RateLimitWaitEvent();
+                wait.begin();
+                Thread.sleep(interval - timeSinceLastRequest);
+                if (wait.shouldCommit()) {
+                    wait.messageId = messageId;
+                    wait.provider = current.getName();
+                    wait.commit();
+                }
             }
-            reader.close();
-            
-            String responseStr = response.toString();
-            ChatTranslatorMod.LOGGER.info("API:{}", responseStr);
-            
-            JsonObject jsonResponse = GSON.fromJson(responseStr, JsonObject.class);
-            int code = jsonResponse.get("code").getAsInt();
-            
-            if (code == 200) {
-                return jsonResponse.get("data").getAsString();
-            } else {
-                String errorMsg = jsonResponse.get("msg").getAsString();
-                ChatTranslatorMod.LOGGER.error("something went wrong: {}", errorMsg);
-                return "something went wrong: " + errorMsg;
+
+            try {
+                return timedCall(exchange, call);
+            } finally {
+                lastRequestTime.set(currentTimeMillis());
             }
-        } else {
-            throw new Exception("something went wrong: " + responseCode);
+        } finally {
+            RATE_LOCK.unlock();
+        }
+    }
+
+    private static <T> T timedCall(HttpExchangeEvent exchange, ProviderCall<T> call) throws Exception {
+        exchange.begin();
+        try {
+            return call.call();
+        } finally {
+            exchange.end();
+        }
+    }
+
+    private static void commitExchange(HttpExchangeEvent exchange, long messageId, TranslationProvider current,
+                                       int textCount, int requestLength, int responseLength, boolean success) {
+        if (exchange.shouldCommit()) {
+            exchange.messageId = messageId;
+            exchange.provider = current == null ? null : current.getName();
+            exchange.textCount = textCount;
+            exchange.requestLength = requestLength;
+            exchange.responseLength = responseLength;
+            exchange.success = success;
+            exchange.commit();
+        }
+    }
+
+    private static int totalLength(List<String> texts) {
+        int length = 0;
+        for (String text : texts) {
+            length += text == null ? 0 : text.length();
         }
+        return length;
     }
-} 
\ No newline at end of file
+}
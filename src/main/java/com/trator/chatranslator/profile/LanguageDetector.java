@@ -0,0 +1,120 @@
+package com.trator.chatranslator.profile;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 本地的简易语言识别
+ * 按文字的书写系统判断中日韩俄，拉丁字母的消息用常见虚词投票，判断不出来时返回 null
+ * （gg、233 这类各国玩家都会用的缩写不作为判断依据），
+ * 只用于积累发送者的语言画像和给翻译接口指定源语言，不追求每条都能识别
+ */
+public class LanguageDetector {
+    // 拉丁字母语言的常见虚词，同时出现在多种语言中的词不收录
+    // （如法语和德语都有的 du，英语和德语都有的 was，多种语言都用的 i、me、tu、non）
+    private static final Map<String, Set<String>> STOPWORDS = new HashMap<>();
+
+    static {
+        STOPWORDS.put("en", new HashSet<>(Arrays.asList(
+                "the", "and", "you", "is", "are", "it", "to", "what", "how", "this", "that",
+                "have", "my", "can", "for", "with", "not", "just", "im", "i'm", "dont", "don't")));
+        STOPWORDS.put("fr", new HashSet<>(Arrays.asList(
+                "le", "les", "est", "et", "je", "vous", "pas", "une", "des", "c'est", "oui", "merci", "avec")));
+        STOPWORDS.put("de", new HashSet<>(Arrays.asList(
+                "der", "die", "das", "und", "ist", "ich", "nicht", "ein", "eine", "ja", "wie", "mit", "auch")));
+        STOPWORDS.put("es", new HashSet<>(Arrays.asList(
+                "el", "los", "las", "y", "yo", "pero", "hola", "gracias", "está", "esta", "muy", "porque", "qué")));
+        STOPWORDS.put("it", new HashSet<>(Arrays.asList(
+                "il", "gli", "è", "io", "che", "sono", "ciao", "grazie", "anche", "perché", "questo")));
+    }
+
+    /**
+     * @return 识别出的语言代码（与配置中的语言代码一致），无法确定时返回 null
+     */
+    public static String detect(String text) {
+        if (text == null || text.isEmpty()) {
+            return null;
+        }
+
+        int han = 0;
+        int kana = 0;
+        int hangul = 0;
+        int cyrillic = 0;
+        int latin = 0;
+        for (int i = 0; i < text.length(); ) {
+            int codePoint = text.codePointAt(i);
+            i += Character.charCount(codePoint);
+            if (!Character.isLetter(codePoint)) {
+                continue;
+            }
+
+            Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+            switch (script) {
+                case HAN:
+                    han++;
+                    break;
+                case HIRAGANA:
+                case KATAKANA:
+                    kana++;
+                    break;
+                case HANGUL:
+                    hangul++;
+                    break;
+                case CYRILLIC:
+                    cyrillic++;
+                    break;
+                case LATIN:
+                    latin++;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        // 假名只出现在日语中，日语句子通常也夹杂汉字，所以先判断假名
+        if (kana > 0) {
+            return "ja";
+        }
+        if (hangul > 0) {
+            return "ko";
+        }
+        if (han > 0) {
+            return "zh-CN";
+        }
+        if (cyrillic > latin) {
+            return "ru";
+        }
+        if (latin < 2) {
+            return null;
+        }
+        return detectLatin(text);
+    }
+
+    // 数每种语言的虚词出现次数，最多的至少出现两次且明显多于第二名时才认定
+    private static String detectLatin(String text) {
+        String best = null;
+        int bestHits = 0;
+        int secondHits = 0;
+        String[] words = text.toLowerCase(Locale.ROOT).split("[\\s,.!?;:\"()]+");
+        for (Map.Entry<String, Set<String>> entry : STOPWORDS.entrySet()) {
+            int hits = 0;
+            for (String word : words) {
+                if (entry.getValue().contains(word)) {
+                    hits++;
+                }
+            }
+            if (hits > bestHits) {
+                secondHits = bestHits;
+                bestHits = hits;
+                best = entry.getKey();
+            } else if (hits > secondHits) {
+                secondHits = hits;
+            }
+        }
+        return bestHits >= 2 && bestHits > secondHits ? best : null;
+    }
+}
@@ -0,0 +1,238 @@
+package com.trator.chatranslator.profile;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.trator.chatranslator.ChatTranslatorMod;
+import com.trator.chatranslator.cache.TranslationCache;
+import com.trator.chatranslator.config.ModConfig;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 按服务器保存的发送者语言画像
+ * 根据每个玩家最近的消息统计他常用的语言：确定使用目标语言的玩家的消息不再翻译，
+ * 其他玩家的消息给翻译接口指定源语言，不必每次都让接口自动检测
+ */
+public class SenderLanguageProfiles {
+    private static final Gson GSON = new Gson();
+    // 按最近使用的先后保存，读取后仍能按先后淘汰
+    private static final Type MAP_TYPE = new TypeToken<LinkedHashMap<String, Profile>>() {}.getType();
+
+    // 每条新消息让旧的统计衰减，画像跟随玩家最近的习惯
+    private static final double DECAY = 0.95;
+    // 衰减后的样本量达到此值（约5条可识别的消息）才认为画像可信
+    private static final double MIN_SAMPLES = 4.0;
+    // 最常用的语言至少占此比例才认为画像可信
+    private static final double MIN_SHARE = 0.8;
+    // 每个服务器最多保留的画像数，超出时淘汰最久没有发言的玩家
+    private static final int MAX_PROFILES = 2000;
+
+    private static class Profile {
+        String name;
+        Map<String, Double> languages = new HashMap<>();
+    }
+
+    // 键为玩家UUID，不知道UUID时用 "name:" + 玩家名，按访问顺序淘汰
+    private static final Map<String, Profile> PROFILES = new LinkedHashMap<String, Profile>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Profile> eldest) {
+            if (size() <= MAX_PROFILES) {
+                return false;
+            }
+            String name = eldest.getValue().name;
+            if (name != null && eldest.getKey().equals(KEYS_BY_NAME.get(name))) {
+                KEYS_BY_NAME.remove(name);
+            }
+            return true;
+        }
+    };
+    // 玩家名 -> 画像的键，也记录还没有画像的玩家，按访问顺序淘汰
+    private static final Map<String, String> KEYS_BY_NAME = new LinkedHashMap<String, String>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > MAX_PROFILES * 2;
+        }
+    };
+
+    private static String loadedServerId;
+
+    /**
+     * 记录玩家名对应的UUID（来自签名聊天消息），之后按UUID保存画像，玩家改名也不会丢失
+     */
+    public static void observe(UUID id, String name) {
+        if (id == null || name == null) {
+            return;
+        }
+        String key = id.toString();
+        synchronized (PROFILES) {
+            String previous = KEYS_BY_NAME.put(name, key);
+            // 之前只知道名字时积累的画像并入UUID下
+            if (previous != null && !previous.equals(key)) {
+                Profile byName = PROFILES.remove(previous);
+                if (byName != null && !PROFILES.containsKey(key)) {
+                    PROFILES.put(key, byName);
+                }
+            }
+            Profile profile = PROFILES.get(key);
+            if (profile != null) {
+                profile.name = name;
+            }
+        }
+    }
+
+    /**
+     * 识别一条消息的语言并计入发送者的画像
+     * @return 识别出的语言，无法确定时返回 null
+     */
+    public static String record(String name, String content) {
+        String language = LanguageDetector.detect(content);
+        if (language == null || name == null) {
+            return language;
+        }
+
+        synchronized (PROFILES) {
+            String key = KEYS_BY_NAME.computeIfAbsent(name, n -> "name:" + n);
+            Profile profile = PROFILES.computeIfAbsent(key, k -> new Profile());
+            profile.name = name;
+            profile.languages.replaceAll((k, v) -> v * DECAY);
+            profile.languages.merge(language, 1.0, Double::sum);
+        }
+        return language;
+    }
+
+    /**
+     * @return 发送者可信的常用语言，画像不足时返回 null
+     */
+    public static String getConfidentLanguage(String name) {
+        if (name == null) {
+            return null;
+        }
+        synchronized (PROFILES) {
+            String key = KEYS_BY_NAME.get(name);
+            Profile profile = key == null ? null : PROFILES.get(key);
+            if (profile == null) {
+                return null;
+            }
+
+            String best = null;
+            double bestCount = 0;
+            double total = 0;
+            for (Map.Entry<String, Double> entry : profile.languages.entrySet()) {
+                total += entry.getValue();
+                if (entry.getValue() > bestCount) {
+                    best = entry.getKey();
+                    bestCount = entry.getValue();
+                }
+            }
+            return total >= MIN_SAMPLES && bestCount / total >= MIN_SHARE ? best : null;
+        }
+    }
+
+    /**
+     * @return 发送者是否确定使用目标语言（其消息不需要翻译）
+     */
+    public static boolean usesLanguage(String name, String language) {
+        return language != null && language.equals(getConfidentLanguage(name));
+    }
+
+    /**
+     * 决定发给翻译接口的源语言：配置了固定源语言时使用配置；
+     * 否则优先用这条消息本身的识别结果，其次用发送者的画像，都没有时仍使用 auto
+     */
+    public static String getSourceLanguage(String name, String content, String configuredLanguage) {
+        if (configuredLanguage != null && !"auto".equals(configuredLanguage)) {
+            return configuredLanguage;
+        }
+        String detected = LanguageDetector.detect(content);
+        if (detected != null) {
+            return detected;
+        }
+        String confident = getConfidentLanguage(name);
+        return confident != null ? confident : "auto";
+    }
+
+    /**
+     * 读取指定服务器的画像，替换当前内存中的内容
+     */
+    public static void load(String serverId) {
+        File file = getProfileFile(serverId);
+        Map<String, Profile> loaded = null;
+        if (file.exists()) {
+            try (FileReader reader = new FileReader(file, StandardCharsets.UTF_8)) {
+                loaded = GSON.fromJson(reader, MAP_TYPE);
+            } catch (Exception e) {
+                ChatTranslatorMod.LOGGER.error("failed to load sender language profiles", e);
+            }
+        }
+
+        synchronized (PROFILES) {
+            PROFILES.clear();
+            KEYS_BY_NAME.clear();
+            if (loaded != null) {
+                for (Map.Entry<String, Profile> entry : loaded.entrySet()) {
+                    Profile profile = entry.getValue();
+                    if (profile == null || profile.languages == null) {
+                        continue;
+                    }
+                    PROFILES.put(entry.getKey(), profile);
+                    if (profile.name != null) {
+                        KEYS_BY_NAME.put(profile.name, entry.getKey());
+                    }
+                }
+            }
+            loadedServerId = serverId;
+        }
+    }
+
+    /**
+     * 把当前画像写回所属服务器的文件
+     */
+    public static void save() {
+        String serverId;
+        String json;
+        synchronized (PROFILES) {
+            serverId = loadedServerId;
+            json = GSON.toJson(PROFILES, MAP_TYPE);
+        }
+        if (serverId == null) {
+            return;
+        }
+
+        File file = getProfileFile(serverId);
+        try {
+            file.getParentFile().mkdirs();
+            try (FileWriter writer = new FileWriter(file, StandardCharsets.UTF_8)) {
+                writer.write(json);
+            }
+        } catch (IOException e) {
+            ChatTranslatorMod.LOGGER.error("failed to save sender language profiles", e);
+        }
+    }
+
+    /**
+     * 写回磁盘并清空内存中的画像，离开服务器时调用
+     */
+    public static void unload() {
+        save();
+        synchronized (PROFILES) {
+            PROFILES.clear();
+            KEYS_BY_NAME.clear();
+            loadedServerId = null;
+        }
+    }
+
+    private static File getProfileFile(String serverId) {
+        return ModConfig.getConfigDir()
+                .resolve("chatranslator").resolve("profiles")
+                .resolve(TranslationCache.getFileSafeServerId(serverId) + ".json").toFile();
+    }
+}
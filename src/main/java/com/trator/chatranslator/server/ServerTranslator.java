@@ -0,0 +1,146 @@
+package com.trator.chatranslator.server;
+
+import com.trator.chatranslator.ChatTranslatorMod;
+import com.trator.chatranslator.MessageClassifier;
+import com.trator.chatranslator.cache.TranslationCache;
+import com.trator.chatranslator.config.ModConfig;
+import com.trator.chatranslator.diagnostics.DiagnosticLog;
+import com.trator.chatranslator.network.TranslationService;
+import com.trator.chatranslator.profile.SenderLanguageProfiles;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import net.fabricmc.fabric.api.message.v1.ServerMessageEvents;
+import net.fabricmc.fabric.api.networking.v1.PayloadTypeRegistry;
+import net.fabricmc.fabric.api.networking.v1.ServerPlayConnectionEvents;
+import net.fabricmc.fabric.api.networking.v1.ServerPlayNetworking;
+import net.minecraft.network.message.MessageType;
+import net.minecraft.network.message.SignedMessage;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.network.ServerPlayerEntity;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * 专用服务器上的翻译模式
+ * 每条聊天消息按已登记的目标语言分组，每种语言只翻译一次，再发给登记了该语言的客户端，
+ * 而不是每个安装了模组的客户端各自调用一次API
+ */
+public class ServerTranslator {
+    // 服务器的翻译缓存和语言画像保存在这个标识下
+    private static final String SERVER_ID = "dedicated-server";
+    // 客户端登记的目标语言要用作分组和缓存的键，只接受形如 en、zh-CN 的语言代码
+    private static final Pattern LANGUAGE_CODE = Pattern.compile("[a-z]{2,3}(-[A-Za-z0-9]{2,4})?");
+
+    // 玩家UUID -> 该玩家需要的目标语言
+    private static final Map<UUID, String> TARGET_LANGUAGES = new ConcurrentHashMap<>();
+    private static final AtomicInteger inFlightTranslations = new AtomicInteger(0);
+
+    /**
+     * 注册双方都需要知道的数据包类型，客户端和服务器都要调用
+     */
+    public static void registerPayloads() {
+        PayloadTypeRegistry.playC2S().register(TranslationOptInPayload.ID, TranslationOptInPayload.CODEC);
+        PayloadTypeRegistry.playS2C().register(TranslatedChatPayload.ID, TranslatedChatPayload.CODEC);
+    }
+
+    /**
+     * 注册服务器端的事件，只在专用服务器上调用
+     */
+    public static void register() {
+        ServerPlayNetworking.registerGlobalReceiver(TranslationOptInPayload.ID, (payload, context) -> {
+            UUID id = context.player().getUuid();
+            String language = payload.targetLanguage();
+            if (language.isEmpty()) {
+                TARGET_LANGUAGES.remove(id);
+            } else if (LANGUAGE_CODE.matcher(language).matches()) {
+                TARGET_LANGUAGES.put(id, language);
+            } else {
+                TARGET_LANGUAGES.remove(id);
+                DiagnosticLog.count("invalidLanguage");
+            }
+        });
+        ServerPlayConnectionEvents.DISCONNECT.register((handler, server) ->
+                TARGET_LANGUAGES.remove(handler.getPlayer().getUuid()));
+        ServerMessageEvents.CHAT_MESSAGE.register(ServerTranslator::onChatMessage);
+
+        ServerLifecycleEvents.SERVER_STARTED.register(server -> {
+            TranslationCache.load(SERVER_ID);
+            SenderLanguageProfiles.load(SERVER_ID);
+        });
+        ServerLifecycleEvents.SERVER_STOPPING.register(server -> {
+            TranslationCache.unload();
+            SenderLanguageProfiles.unload();
+        });
+
+        ChatTranslatorMod.LOGGER.info("server-side translation registered");
+    }
+
+    private static void onChatMessage(SignedMessage message, ServerPlayerEntity sender, MessageType.Parameters params) {
+        if (TARGET_LANGUAGES.isEmpty()) {
+            return;
+        }
+        String content = message.getSignedContent();
+        if (content == null || content.isBlank() || MessageClassifier.isCommand(content)) {
+            return;
+        }
+
+        String senderName = sender.getName().getString();
+        SenderLanguageProfiles.observe(sender.getUuid(), senderName);
+        SenderLanguageProfiles.record(senderName, content);
+        String sourceLanguage = SenderLanguageProfiles.getSourceLanguage(senderName, content, ModConfig.getSourceLanguage());
+
+        // 按目标语言分组，发送者自己不需要翻译
+        Map<String, List<UUID>> recipientsByLanguage = new HashMap<>();
+        for (Map.Entry<UUID, String> entry : TARGET_LANGUAGES.entrySet()) {
+            if (!entry.getKey().equals(sender.getUuid())) {
+                recipientsByLanguage.computeIfAbsent(entry.getValue(), k -> new ArrayList<>()).add(entry.getKey());
+            }
+        }
+
+        MinecraftServer server = sender.getServer();
+        for (Map.Entry<String, List<UUID>> entry : recipientsByLanguage.entrySet()) {
+            String targetLanguage = entry.getKey();
+            if (targetLanguage.equals(sourceLanguage) || SenderLanguageProfiles.usesLanguage(senderName, targetLanguage)) {
+                continue;
+            }
+            if ("zh-CN".equals(targetLanguage) && MessageClassifier.shouldSkipTranslation(content)) {
+                continue;
+            }
+            // 翻译接口做不到的语言不翻译，否则这些玩家会收到其他语言的译文，缓存也会按错误的语言保存
+            if (!TranslationService.supportsTargetLanguage(targetLanguage)) {
+                DiagnosticLog.count("unsupportedLanguage");
+                continue;
+            }
+            // 翻译接口跟不上时直接丢弃，不让积压无限增长
+            if (inFlightTranslations.get() >= ModConfig.getQueueCapacity()) {
+                DiagnosticLog.count("shed");
+                continue;
+            }
+
+            inFlightTranslations.incrementAndGet();
+            List<UUID> recipients = entry.getValue();
+            TranslationService.translateAsync(content, 0, sourceLanguage, targetLanguage).whenComplete((translated, error) -> {
+                inFlightTranslations.decrementAndGet();
+                if (error != null || TranslationService.isErrorResult(translated) || translated.equals(content)) {
+                    return;
+                }
+                TranslatedChatPayload payload = new TranslatedChatPayload(senderName, content, translated);
+                // 数据包在服务器线程上发送
+                server.execute(() -> {
+                    for (UUID id : recipients) {
+                        ServerPlayerEntity player = server.getPlayerManager().getPlayer(id);
+                        if (player != null && ServerPlayNetworking.canSend(player, TranslatedChatPayload.ID)) {
+                            ServerPlayNetworking.send(player, payload);
+                        }
+                    }
+                });
+            });
+        }
+    }
+}
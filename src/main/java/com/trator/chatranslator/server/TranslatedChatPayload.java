@@ -0,0 +1,26 @@
+package com.trator.chatranslator.server;
+
+import com.trator.chatranslator.ChatTranslatorMod;
+import net.minecraft.network.RegistryByteBuf;
+import net.minecraft.network.codec.PacketCodec;
+import net.minecraft.network.codec.PacketCodecs;
+import net.minecraft.network.packet.CustomPayload;
+import net.minecraft.util.Identifier;
+
+/**
+ * 服务器 -> 客户端：服务器翻译好的一条聊天消息
+ */
+public record TranslatedChatPayload(String sender, String original, String translated) implements CustomPayload {
+    public static final CustomPayload.Id<TranslatedChatPayload> ID =
+            new CustomPayload.Id<>(Identifier.of(ChatTranslatorMod.MOD_ID, "translated_chat"));
+    public static final PacketCodec<RegistryByteBuf, TranslatedChatPayload> CODEC = PacketCodec.tuple(
+            PacketCodecs.STRING, TranslatedChatPayload::sender,
+            PacketCodecs.STRING, TranslatedChatPayload::original,
+            PacketCodecs.STRING, TranslatedChatPayload::translated,
+            TranslatedChatPayload::new);
+
+    @Override
+    public CustomPayload.Id<? extends CustomPayload> getId() {
+        return ID;
+    }
+}
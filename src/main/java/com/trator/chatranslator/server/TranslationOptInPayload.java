@@ -0,0 +1,27 @@
+package com.trator.chatranslator.server;
+
+import com.trator.chatranslator.ChatTranslatorMod;
+import net.minecraft.network.RegistryByteBuf;
+import net.minecraft.network.codec.PacketCodec;
+import net.minecraft.network.codec.PacketCodecs;
+import net.minecraft.network.packet.CustomPayload;
+import net.minecraft.util.Identifier;
+
+/**
+ * 客户端 -> 服务器：请求服务器把聊天翻译成指定语言后发过来，目标语言为空表示不再需要
+ */
+public record TranslationOptInPayload(String targetLanguage) implements CustomPayload {
+    // 语言代码的长度上限，更长的数据包在解码时被拒绝
+    public static final int MAX_LANGUAGE_LENGTH = 16;
+
+    public static final CustomPayload.Id<TranslationOptInPayload> ID =
+            new CustomPayload.Id<>(Identifier.of(ChatTranslatorMod.MOD_ID, "opt_in"));
+    public static final PacketCodec<RegistryByteBuf, TranslationOptInPayload> CODEC = PacketCodec.tuple(
+            PacketCodecs.string(MAX_LANGUAGE_LENGTH), TranslationOptInPayload::targetLanguage,
+            TranslationOptInPayload::new);
+
+    @Override
+    public CustomPayload.Id<? extends CustomPayload> getId() {
+        return ID;
+    }
+}
@@ -0,0 +1,404 @@
+package com.trator.chatranslator;
+
+import com.google.gson.Gson;
+import com.trator.chatranslator.cache.BroadcastStore;
+import com.trator.chatranslator.cache.TranslationCache;
+import com.trator.chatranslator.cache.TranslationJournal;
+import com.trator.chatranslator.config.ModConfig;
+import com.trator.chatranslator.diagnostics.DiagnosticLog;
+import com.trator.chatranslator.network.TranslationService;
+import com.trator.chatranslator.profile.SenderLanguageProfiles;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * 聊天日志回放工具
+ * 读取游戏 latest.log 中的 [CHAT] 行，按原始时间（或加速后的时间）送入监听器的消息入口，
+ * 再由监听器的队列处理器完成分类、语言画像、重复公告、翻译缓存（含近似匹配）、调用间隔、公平队列、
+ * 按需翻译和频率限制后的重新排队，与游戏中走同一套代码。只把翻译接口换成假接口、
+ * 把翻译线程和系统时间换成虚拟时钟，结果可重复，用于对比改动前后的吞吐量和延迟。
+ * 指定 --reconnect-at 时在该时间（毫秒）断开并重新进入服务器，检查断开时还没翻译完的消息是否全部继续翻译，
+ * 没有全部继续时以非零状态退出。
+ * 仓库里没有构建脚本，本工具和 StubTranslationProvider 需要手动与游戏依赖一起编译后用 main 运行，
+ * 不属于自动执行的测试
+ *
+ * 用法: ChatLogReplay <latest.log> [--speed 1] [--player 名字] [--latency 300] [--interval 2000]
+ *       [--concurrency 1] [--rate-limit-every 0] [--capacity 64] [--max-age 15000] [--per-sender 1]
+ *       [--in-flight 8] [--fuzzy true] [--lazy false] [--target zh-CN]
+ *       [--reconnect-at 毫秒]
+ */
+public class ChatLogReplay {
+    // 例如: [12:34:56] [Render thread/INFO]: [CHAT] <Steve> hello
+    private static final Pattern LOG_LINE_PATTERN = Pattern.compile("^\\[(\\d{1,2}):(\\d{2}):(\\d{2})].*?\\[CHAT]\\s*(.*)$");
+
+    // 与监听器的队列处理器一致，每100毫秒检查一次队列
+    private static final long TICK_MS = 100;
+    // 最后一条消息之后最多继续运行的虚拟时间，队列始终排不空时结束回放
+    private static final long MAX_DRAIN_MS = 60 * 60_000;
+    private static final String SERVER_ID = "replay";
+
+    private static class ChatLine {
+        final long time;
+        final String text;
+
+        ChatLine(long time, String text) {
+            this.time = time;
+            this.text = text;
+        }
+    }
+
+    private static class Task {
+        final long time;
+        final long order;
+        final Runnable command;
+
+        Task(long time, long order, Runnable command) {
+            this.time = time;
+            this.order = order;
+            this.command = command;
+        }
+    }
+
+    /**
+     * 在虚拟时钟上执行翻译任务：按假接口的延迟、间隔和并发数算出完成时间，到时在回放线程上执行，
+     * 任务结束时虚拟时钟正好是完成时间，翻译服务的间隔检查不会真的休眠
+     */
+    private class VirtualExecutor implements Executor {
+        private final PriorityQueue<Task> tasks = new PriorityQueue<>(
+                Comparator.comparingLong((Task task) -> task.time).thenComparingLong(task -> task.order));
+        private final PriorityQueue<Long> busyUntil = new PriorityQueue<>();
+        private long lastEnd = Long.MIN_VALUE / 2;
+        private long order;
+
+        @Override
+        public void execute(Runnable command) {
+            long start = now;
+            long interval = provider.getMinRequestInterval();
+            if (interval > 0) {
+                // 有间隔限制的接口串行调用，上一次调用结束后再等一个间隔
+                start = Math.max(now, lastEnd + interval);
+            } else if (busyUntil.size() >= provider.getMaxConcurrentRequests()) {
+                start = Math.max(now, busyUntil.poll());
+            }
+            long end = start + provider.getLatencyMs();
+            if (interval > 0) {
+                lastEnd = end;
+            } else {
+                busyUntil.add(end);
+            }
+            tasks.add(new Task(end, order++, command));
+        }
+
+        boolean isIdle() {
+            return tasks.isEmpty();
+        }
+
+        long nextTime() {
+            return tasks.peek().time;
+        }
+
+        // 执行到达当前时间的任务，结果回调在这里同步完成
+        void runDue() {
+            while (!tasks.isEmpty() && tasks.peek().time <= now) {
+                tasks.poll().command.run();
+            }
+        }
+    }
+
+    private final StubTranslationProvider provider;
+    private final String currentPlayer;
+    private final VirtualExecutor executor = new VirtualExecutor();
+
+    private final Map<String, Integer> outcomes = new TreeMap<>();
+    // 原文 -> 第一次到达的时间，译文送达时取出
+    private final Map<String, Long> arrivals = new HashMap<>();
+    private final List<Long> latencies = new ArrayList<>();
+
+    private volatile long now;
+    private int delivered;
+
+    // 断开并重新进入服务器的虚拟时间，-1 表示不断开
+    private final long reconnectAt;
+    private boolean reconnected;
+    // 断开时还没翻译完的消息数和重新进入后没有继续翻译的消息数
+    private int pendingAtDisconnect;
+    private int notResumed;
+
+    public ChatLogReplay(StubTranslationProvider provider, String currentPlayer, long reconnectAt) {
+        this.provider = provider;
+        this.currentPlayer = currentPlayer;
+        this.reconnectAt = reconnectAt;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("usage: ChatLogReplay <latest.log> [--speed 1] [--player name] [--latency 300] "
+                    + "[--interval 2000] [--concurrency 1] [--rate-limit-every 0] [--capacity 64] [--max-age 15000] "
+                    + "[--per-sender 1] [--in-flight 8] [--fuzzy true] [--lazy false] [--target zh-CN] [--reconnect-at ms]");
+            System.exit(1);
+        }
+
+        Map<String, String> options = parseOptions(Arrays.copyOfRange(args, 1, args.length));
+        double speed = Double.parseDouble(options.getOrDefault("speed", "1"));
+        StubTranslationProvider provider = new StubTranslationProvider(
+                Long.parseLong(options.getOrDefault("latency", "300")),
+                Long.parseLong(options.getOrDefault("interval", "2000")),
+                Integer.parseInt(options.getOrDefault("concurrency", "1")),
+                Integer.parseInt(options.getOrDefault("rate-limit-every", "0")));
+
+        ModConfig.ConfigData config = new ModConfig.ConfigData();
+        config.targetLanguage = options.getOrDefault("target", config.targetLanguage);
+        config.queueCapacity = Integer.parseInt(options.getOrDefault("capacity", String.valueOf(config.queueCapacity)));
+        config.maxMessageAgeMs = Integer.parseInt(options.getOrDefault("max-age", String.valueOf(config.maxMessageAgeMs)));
+        config.maxInFlightPerSender = Integer.parseInt(options.getOrDefault("per-sender", String.valueOf(config.maxInFlightPerSender)));
+        config.maxInFlightRequests = Integer.parseInt(options.getOrDefault("in-flight", String.valueOf(config.maxInFlightRequests)));
+        config.fuzzyCache = Boolean.parseBoolean(options.getOrDefault("fuzzy", String.valueOf(config.fuzzyCache)));
+        config.lazyTranslation = Boolean.parseBoolean(options.getOrDefault("lazy", String.valueOf(config.lazyTranslation)));
+        // 回放只统计送达时间，译文另起一条消息，不需要聊天框
+        config.displayMode = ModConfig.DISPLAY_MESSAGE;
+
+        List<ChatLine> lines = readChatLines(args[0], speed);
+        ChatLogReplay replay = new ChatLogReplay(provider, options.get("player"),
+                Long.parseLong(options.getOrDefault("reconnect-at", "-1")));
+        Path dataDir = Files.createTempDirectory("chatranslator-replay");
+        boolean resumedAll;
+        try {
+            replay.setUp(dataDir, config);
+            long duration = replay.run(lines);
+            replay.printReport(lines.size(), duration);
+            resumedAll = replay.notResumed == 0;
+        } finally {
+            TranslationJournal.unload();
+            deleteRecursively(dataDir);
+        }
+        if (!resumedAll) {
+            System.exit(2);
+        }
+    }
+
+    /**
+     * 读取日志中的聊天行，时间换算为相对第一条聊天的毫秒数并按速度缩放
+     */
+    static List<ChatLine> readChatLines(String path, double speed) throws IOException {
+        List<ChatLine> lines = new ArrayList<>();
+        long firstSecond = -1;
+        long dayOffset = 0;
+        long previousSecond = -1;
+
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(path), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Matcher matcher = LOG_LINE_PATTERN.matcher(line);
+                if (!matcher.find()) {
+                    continue;
+                }
+
+                long second = Long.parseLong(matcher.group(1)) * 3600
+                        + Long.parseLong(matcher.group(2)) * 60
+                        + Long.parseLong(matcher.group(3));
+                // 日志跨过午夜
+                if (previousSecond >= 0 && second + dayOffset < previousSecond - 3600) {
+                    dayOffset += 86400;
+                }
+                second += dayOffset;
+                previousSecond = second;
+                if (firstSecond < 0) {
+                    firstSecond = second;
+                }
+
+                long time = speed > 0 ? (long) ((second - firstSecond) * 1000 / speed) : 0;
+                lines.add(new ChatLine(time, matcher.group(4)));
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * 使用临时目录中的配置和按服务器保存的数据，像进入服务器一样准备好翻译流程
+     */
+    void setUp(Path dataDir, ModConfig.ConfigData config) throws IOException {
+        Files.writeString(dataDir.resolve("chatranslator.json"), new Gson().toJson(config), StandardCharsets.UTF_8);
+        ModConfig.setConfigDir(dataDir);
+        TranslationService.useReplayEnvironment(provider, executor, () -> now);
+        ChatMessageListener.deliveryObserver = this::onDelivered;
+
+        ServerContext.onJoin(SERVER_ID);
+        TranslationCache.load(SERVER_ID);
+        SenderLanguageProfiles.load(SERVER_ID);
+        BroadcastStore.load(SERVER_ID);
+        ChatMessageListener.resumeJournal(SERVER_ID);
+    }
+
+    /**
+     * 像游戏中一样断开连接：监听器离开服务器，原版随后清空聊天框（ChatHudMixin 取消还没显示的翻译），
+     * 再重新进入同一服务器，从翻译日志继续；断开时排队和翻译中的消息都应该重新排队
+     */
+    void reconnect() {
+        Set<String> pending = ChatMessageListener.getPendingTranslations();
+        pendingAtDisconnect = pending.size();
+
+        ServerContext.onDisconnect();
+        ChatMessageListener.leaveServer();
+        ChatMessageListener.cancelPending("清空聊天框", true);
+
+        ServerContext.onJoin(SERVER_ID);
+        int resumed = ChatMessageListener.resumeJournal(SERVER_ID);
+        pending.removeAll(ChatMessageListener.getPendingTranslations());
+        notResumed = pending.size();
+        System.out.println("断开重连: 断开时待翻译 " + pendingAtDisconnect + " 条，重新排队 " + resumed + " 条");
+        for (String content : pending) {
+            System.err.println("重新进入后没有继续翻译: " + content);
+        }
+    }
+
+    /**
+     * 在虚拟时钟上回放所有聊天行，依次处理消息到达、翻译完成和队列处理器检查三种事件
+     * @return 回放结束时的虚拟时间（毫秒）
+     */
+    long run(List<ChatLine> lines) {
+        long lastArrival = lines.isEmpty() ? 0 : lines.get(lines.size() - 1).time;
+        long nextTick = 0;
+        int next = 0;
+
+        while (next < lines.size() || ChatMessageListener.getQueuedCount() > 0 || !executor.isIdle()) {
+            if (now > lastArrival + MAX_DRAIN_MS) {
+                System.err.println("队列在最后一条消息之后 " + MAX_DRAIN_MS + "ms 仍未排空，提前结束");
+                break;
+            }
+
+            long nextEvent = nextTick;
+            if (reconnectAt >= 0 && !reconnected) {
+                nextEvent = Math.min(nextEvent, Math.max(now, reconnectAt));
+            }
+            if (next < lines.size()) {
+                nextEvent = Math.min(nextEvent, lines.get(next).time);
+            }
+            if (!executor.isIdle()) {
+                nextEvent = Math.min(nextEvent, executor.nextTime());
+            }
+            now = Math.max(now, nextEvent);
+
+            if (reconnectAt >= 0 && !reconnected && now >= reconnectAt) {
+                reconnected = true;
+                reconnect();
+            }
+
+            // 到达当前时间的消息
+            while (next < lines.size() && lines.get(next).time <= now) {
+                accept(lines.get(next++));
+            }
+
+            // 完成当前时间之前的翻译
+            executor.runDue();
+
+            if (now >= nextTick) {
+                ChatMessageListener.processTranslationQueue();
+                // 游戏中由客户端 tick 写入聊天框
+                TranslationOutbox.clear();
+                nextTick = (now / TICK_MS + 1) * TICK_MS;
+            }
+        }
+        return now;
+    }
+
+    // 与游戏中一样送入监听器：玩家聊天按签名聊天处理，其他行按游戏消息处理（可能是重复公告）
+    private void accept(ChatLine line) {
+        MessageClassifier.Result result = MessageClassifier.classify(line.text, currentPlayer);
+        boolean chat = result.outcome != MessageClassifier.Outcome.NOT_CHAT;
+        String key = chat && result.content != null ? result.content : line.text;
+
+        Long previous = arrivals.put(key, line.time);
+        String outcome = ChatMessageListener.handleMessage(line.text, currentPlayer, null, chat);
+        outcomes.merge(outcome, 1, Integer::sum);
+
+        // 只有排队的消息从这次到达开始计算延迟，正在翻译的相同内容沿用第一次到达的时间
+        if (!"queued".equals(outcome) && !"broadcastHit".equals(outcome)) {
+            if (previous != null) {
+                arrivals.put(key, previous);
+            } else {
+                arrivals.remove(key);
+            }
+        }
+    }
+
+    private void onDelivered(String content) {
+        delivered++;
+        Long arrival = arrivals.remove(content);
+        if (arrival != null) {
+            latencies.add(now - arrival);
+        }
+    }
+
+    void printReport(int chatLines, long duration) {
+        Map<String, Long> counts = DiagnosticLog.totals();
+        long duplicates = outcomes.getOrDefault("duplicate", 0);
+        long cacheHits = counts.getOrDefault("cacheHit", 0L);
+        long fuzzyHits = counts.getOrDefault("fuzzyHit", 0L);
+        long broadcastHits = counts.getOrDefault("broadcastHit", 0L);
+        long knownLanguage = counts.getOrDefault("knownLanguage", 0L);
+
+        System.out.println("===== 聊天回放结果 =====");
+        System.out.println("聊天行数: " + chatLines);
+        System.out.println("处理结果: " + outcomes);
+        System.out.println("已送达: " + delivered);
+        System.out.println("丢弃(超时/溢出): " + ChatMessageListener.getShedExpiredCount()
+                + "/" + ChatMessageListener.getShedOverflowCount());
+        System.out.println("放弃(错误/重试用完): " + counts.getOrDefault("dropped", 0L)
+                + "/" + counts.getOrDefault("retryExhausted", 0L)
+                + "  重新排队: " + counts.getOrDefault("requeued", 0L));
+        System.out.println("API调用: " + provider.getCalls() + "  其中频率限制: " + counts.getOrDefault("rateLimited", 0L));
+        // 只统计确实省下的调用，丢弃和放弃的消息没有译文，不算节省
+        System.out.println("节省的API调用: " + (duplicates + cacheHits + broadcastHits + knownLanguage)
+                + " (重复合并 " + duplicates + "  缓存命中 " + cacheHits + "，其中近似 " + fuzzyHits
+                + "  固定公告 " + broadcastHits + "  发送者使用目标语言 " + knownLanguage + ")");
+        System.out.println("延迟(ms) p50=" + percentile(50) + " p90=" + percentile(90)
+                + " p99=" + percentile(99) + " max=" + percentile(100));
+        System.out.println("虚拟时长: " + duration + "ms");
+    }
+
+    private long percentile(double p) {
+        if (latencies.isEmpty()) {
+            return 0;
+        }
+        List<Long> sorted = new ArrayList<>(latencies);
+        sorted.sort(Long::compare);
+        int index = (int) Math.ceil(p / 100.0 * sorted.size()) - 1;
+        return sorted.get(Math.max(0, Math.min(index, sorted.size() - 1)));
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("unexpected argument: " + args[i]);
+            }
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+        return options;
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+}
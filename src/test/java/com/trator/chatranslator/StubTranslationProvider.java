@@ -0,0 +1,65 @@
+package com.trator.chatranslator;
+
+import com.trator.chatranslator.network.RateLimitException;
+import com.trator.chatranslator.network.TranslationProvider;
+
+/**
+ * 回放测试使用的假翻译接口，不发出网络请求
+ * 固定的响应延迟、请求间隔和并发数用来模拟真实接口的限制，响应延迟由回放工具的执行器在虚拟时钟上计算
+ */
+public class StubTranslationProvider implements TranslationProvider {
+    private final long latencyMs;
+    private final long minRequestInterval;
+    private final int maxConcurrentRequests;
+    private final int rateLimitEvery;
+
+    private int calls;
+
+    /**
+     * @param rateLimitEvery 每隔多少次调用返回一次频率限制，用于触发重新排队，0 表示从不
+     */
+    public StubTranslationProvider(long latencyMs, long minRequestInterval, int maxConcurrentRequests, int rateLimitEvery) {
+        this.latencyMs = latencyMs;
+        this.minRequestInterval = minRequestInterval;
+        this.maxConcurrentRequests = Math.max(1, maxConcurrentRequests);
+        this.rateLimitEvery = Math.max(0, rateLimitEvery);
+    }
+
+    @Override
+    public String getName() {
+        return "stub";
+    }
+
+    @Override
+    public String translate(String text, String sourceLanguage, String targetLanguage) throws Exception {
+        calls++;
+        if (rateLimitEvery > 0 && calls % rateLimitEvery == 0) {
+            throw new RateLimitException("stub rate limit");
+        }
+        return "[" + targetLanguage + "] " + text;
+    }
+
+    @Override
+    public long getMinRequestInterval() {
+        return minRequestInterval;
+    }
+
+    @Override
+    public int getMaxConcurrentRequests() {
+        return maxConcurrentRequests;
+    }
+
+    /**
+     * @return 模拟的单次请求耗时（毫秒）
+     */
+    public long getLatencyMs() {
+        return latencyMs;
+    }
+
+    /**
+     * @return 实际发出的调用次数，包括返回频率限制的调用
+     */
+    public int getCalls() {
+        return calls;
+    }
+}
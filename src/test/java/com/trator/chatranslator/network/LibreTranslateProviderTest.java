@@ -0,0 +1,148 @@
+package com.trator.chatranslator.network;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpServer;
+import com.trator.chatranslator.config.ModConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 用本进程内的 HTTP 服务模拟 LibreTranslate，检查请求格式和对各种响应的处理
+ * 注意：仓库里还没有构建脚本（没有 test 源集和 JUnit 5 依赖），本测试不会随构建运行，
+ * 在接好构建之前不能当作回归测试
+ */
+public class LibreTranslateProviderTest {
+    private static final Gson GSON = new Gson();
+
+    private HttpServer server;
+    private LibreTranslateProvider provider;
+    private final AtomicInteger requests = new AtomicInteger();
+
+    // 模拟接口下一次返回的状态码和内容，以及收到的最后一个请求
+    private volatile int status = 200;
+    private volatile String response = "{}";
+    private volatile JsonObject lastRequest;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        // 错误响应会写入诊断记录，需要读取配置
+        ModConfig.setConfigDir(Files.createTempDirectory("chatranslator-test"));
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/translate", exchange -> {
+            requests.incrementAndGet();
+            lastRequest = GSON.fromJson(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8), JsonObject.class);
+            byte[] body = response.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+
+        provider = new LibreTranslateProvider("http://127.0.0.1:" + server.getAddress().getPort() + "/", "secret", 4);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void translatesSingleText() throws Exception {
+        response = "{\"translatedText\": \"你好\"}";
+
+        assertEquals("你好", provider.translate("hello", "en", "zh-CN"));
+        assertEquals("hello", lastRequest.get("q").getAsString());
+        // 语言代码去掉地区部分
+        assertEquals("en", lastRequest.get("source").getAsString());
+        assertEquals("zh", lastRequest.get("target").getAsString());
+        assertEquals("text", lastRequest.get("format").getAsString());
+        assertEquals("secret", lastRequest.get("api_key").getAsString());
+    }
+
+    @Test
+    public void sendsAutoWhenSourceLanguageIsUnknown() throws Exception {
+        response = "{\"translatedText\": \"你好\"}";
+
+        provider.translate("hello", null, "zh-CN");
+        assertEquals("auto", lastRequest.get("source").getAsString());
+    }
+
+    @Test
+    public void skipsBlankTextWithoutRequest() throws Exception {
+        assertEquals("  ", provider.translate("  ", "en", "zh-CN"));
+        assertEquals(0, requests.get());
+    }
+
+    @Test
+    public void translatesBatchInOneRequest() throws Exception {
+        response = "{\"translatedText\": [\"你好\", \"再见\"]}";
+
+        assertEquals(List.of("你好", "再见"), provider.translateBatch(List.of("hello", "bye"), "auto", "zh-CN"));
+        assertEquals(1, requests.get());
+        assertTrue(lastRequest.get("q").isJsonArray());
+        assertEquals(2, lastRequest.getAsJsonArray("q").size());
+        assertEquals("bye", lastRequest.getAsJsonArray("q").get(1).getAsString());
+    }
+
+    @Test
+    public void rejectsBatchWithWrongSize() {
+        response = "{\"translatedText\": [\"你好\"]}";
+
+        Exception e = assertThrows(Exception.class, () -> provider.translateBatch(List.of("hello", "bye"), "auto", "zh-CN"));
+        assertTrue(e.getMessage().contains("batch size mismatch"));
+    }
+
+    @Test
+    public void reportsHttpErrors() {
+        status = 500;
+        response = "{\"error\": \"internal\"}";
+
+        Exception e = assertThrows(Exception.class, () -> provider.translate("hello", "en", "zh-CN"));
+        assertTrue(e.getMessage().contains("500"));
+        assertFalse(e instanceof RateLimitException);
+    }
+
+    @Test
+    public void reportsRateLimitSeparately() {
+        status = 429;
+        response = "{\"error\": \"Slowdown: 30 per 1 minute\"}";
+
+        assertThrows(RateLimitException.class, () -> provider.translate("hello", "en", "zh-CN"));
+    }
+
+    @Test
+    public void reportsErrorField() {
+        response = "{\"error\": \"target language not supported\"}";
+
+        Exception e = assertThrows(Exception.class, () -> provider.translate("hello", "en", "xx"));
+        assertTrue(e.getMessage().contains("target language not supported"));
+    }
+
+    @Test
+    public void omitsEmptyApiKey() throws Exception {
+        provider = new LibreTranslateProvider("http://127.0.0.1:" + server.getAddress().getPort(), "", 4);
+        response = "{\"translatedText\": \"你好\"}";
+
+        provider.translate("hello", "en", "zh-CN");
+        assertFalse(lastRequest.has("api_key"));
+    }
+}